@@ -0,0 +1,46 @@
+#!/usr/bin/env bash
+#
+# Runs training invocations of the CLI against a local stub and dumps an AppCDS archive of the classes they load.
+# Usage: train.sh <build directory> <jar file name>
+#
+set -euo pipefail
+
+target_dir=$1
+jar_name=$2
+jar="${target_dir}/${jar_name}"
+work_dir="${target_dir}/appcds"
+archive="${target_dir}/trino-jwt-gen-cli.jsa"
+java="${JAVA_HOME:+${JAVA_HOME}/bin/}java"
+main_class=io.trino.jwtgen.Cli
+
+rm -rf "${work_dir}" "${archive}"
+mkdir -p "${work_dir}"
+
+# the serve command doubles as the local stub for execute_http_request
+"${java}" -XX:DumpLoadedClassList="${work_dir}/serve.classlist" -cp "${jar}" "${main_class}" \
+    serve --secret training --port 0 > "${work_dir}/serve.log" &
+stub_pid=$!
+trap 'kill ${stub_pid} 2> /dev/null || true' EXIT
+
+port=
+for _ in $(seq 100); do
+    port=$(sed -n 's|.*http://[^:]*:\([0-9]*\)/token.*|\1|p' "${work_dir}/serve.log")
+    [ -n "${port}" ] && break
+    sleep 0.1
+done
+[ -n "${port}" ] || { echo "training stub did not start" >&2; exit 1; }
+
+"${java}" -XX:DumpLoadedClassList="${work_dir}/generate.classlist" -cp "${jar}" "${main_class}" \
+    generate_jwt_token --secret training > /dev/null
+"${java}" -XX:DumpLoadedClassList="${work_dir}/execute.classlist" -cp "${jar}" "${main_class}" \
+    execute_http_request --secret training --request "http://127.0.0.1:${port}/token" > /dev/null
+
+kill "${stub_pid}"
+wait "${stub_pid}" 2> /dev/null || true
+
+cat "${work_dir}"/*.classlist | sort -u > "${work_dir}/trino-jwt-gen-cli.classlist"
+"${java}" -Xshare:dump -XX:SharedClassListFile="${work_dir}/trino-jwt-gen-cli.classlist" -XX:SharedArchiveFile="${archive}" -cp "${jar}" > "${work_dir}/dump.log"
+
+sed "s|@JAR@|${jar_name}|" "$(dirname "$0")/trino-jwt-gen-cli" > "${target_dir}/trino-jwt-gen-cli"
+chmod +x "${target_dir}/trino-jwt-gen-cli"
+echo "AppCDS archive written to ${archive}"
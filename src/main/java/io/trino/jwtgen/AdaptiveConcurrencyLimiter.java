@@ -0,0 +1,153 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * AIMD limit on the number of requests in flight. Like TCP congestion control the limit grows by one per successful
+ * response until the first back off, then by one per limit's worth of responses. It is halved on 503, 429 or a
+ * timeout, and reduced by a tenth when a response takes more than {@code latencyTolerance} times the fastest one
+ * seen from the same host. It is reduced at most once per round trip: responses to requests sent before the last
+ * reduction are not counted again.
+ */
+public class AdaptiveConcurrencyLimiter
+{
+    private static final double OVERLOAD_BACKOFF = 0.5;
+    private static final double LATENCY_BACKOFF = 0.9;
+    // latency increases below this are noise, not queueing
+    private static final long MIN_LATENCY_INCREASE_NANOS = MILLISECONDS.toNanos(5);
+
+    private final int maxLimit;
+    private final double latencyTolerance;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Map<String, Long> minLatencyNanos = new HashMap<>();
+    private double limit;
+    private int inFlight;
+    private boolean slowStart = true;
+    private long lastDecreaseNanos;
+    private int peakLimit;
+    private long overloadDecreases;
+    private long latencyDecreases;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int maxLimit, double latencyTolerance)
+    {
+        checkArgument(initialLimit >= 1, "initialLimit must be at least 1");
+        checkArgument(maxLimit >= initialLimit, "maxLimit must be at least initialLimit");
+        checkArgument(latencyTolerance > 1, "latencyTolerance must be greater than 1");
+        this.limit = initialLimit;
+        this.peakLimit = initialLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    /**
+     * Waits until a request may be sent, and returns its start time for {@link #release}.
+     */
+    public long acquire()
+            throws InterruptedException
+    {
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                available.await();
+            }
+            inFlight++;
+            return System.nanoTime();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param host the host the request went to, latency is compared per host
+     * @param statusCode response status, or 0 if the request failed
+     * @param failure why the request failed, or null
+     */
+    public void release(String host, long startNanos, long latencyNanos, int statusCode, IOException failure)
+    {
+        lock.lock();
+        try {
+            inFlight--;
+            if (statusCode == 503 || statusCode == 429 || failure instanceof SocketTimeoutException) {
+                if (decrease(startNanos, OVERLOAD_BACKOFF)) {
+                    overloadDecreases++;
+                }
+            }
+            else if (failure == null) {
+                long minLatency = minLatencyNanos.merge(host, latencyNanos, Math::min);
+                if (latencyNanos > minLatency * latencyTolerance && latencyNanos - minLatency > MIN_LATENCY_INCREASE_NANOS) {
+                    if (decrease(startNanos, LATENCY_BACKOFF)) {
+                        latencyDecreases++;
+                    }
+                }
+                else {
+                    limit = Math.min(maxLimit, limit + (slowStart ? 1 : 1 / limit));
+                    peakLimit = Math.max(peakLimit, (int) limit);
+                }
+            }
+            available.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean decrease(long startNanos, double backoff)
+    {
+        // nanoTime values may only be compared by subtraction
+        if (!slowStart && startNanos - lastDecreaseNanos < 0) {
+            return false;
+        }
+        limit = Math.max(1, limit * backoff);
+        lastDecreaseNanos = System.nanoTime();
+        slowStart = false;
+        return true;
+    }
+
+    public int getLimit()
+    {
+        lock.lock();
+        try {
+            return (int) limit;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public void print(PrintStream out)
+    {
+        lock.lock();
+        try {
+            out.printf("Adaptive concurrency: limit %s, peak %s, backed off %s times on overload and %s times on latency%n",
+                    (int) limit, peakLimit, overloadDecreases, latencyDecreases);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+}
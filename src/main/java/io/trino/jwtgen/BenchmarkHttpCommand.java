@@ -0,0 +1,264 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Okio;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+import static io.trino.jwtgen.ExecuteInternalHttpRequestCommand.buildRequest;
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+@CommandLine.Command(
+        name = "bench_http",
+        usageHelpAutoWidth = true,
+        description = "Drive an internal endpoint at a fixed rate or fixed concurrency and report throughput and latency percentiles"
+)
+public class BenchmarkHttpCommand
+        implements Runnable
+{
+    private static final long HIGHEST_TRACKABLE_LATENCY_MICROS = SECONDS.toMicros(60);
+
+    @CommandLine.Option(names = "--secret", required = true, description = "Secret value to generate JWT token from")
+    public String secret;
+
+    @CommandLine.Option(names = "--principal", defaultValue = "nodeId", description = "Value for subject to use for JWT token")
+    public String principal;
+
+    @CommandLine.Option(names = "--request", required = true, description = "Request URL e.g. http://<coordinator>:8080/v1/info")
+    public String requestUrl;
+
+    @CommandLine.Option(names = "--duration", defaultValue = "PT30S", description = "How long to run, ISO-8601 duration e.g. PT30S")
+    public Duration duration;
+
+    @CommandLine.Option(names = "--concurrency", defaultValue = "16", description = "Number of requests kept in flight when --rate is not set")
+    public int concurrency;
+
+    @CommandLine.Option(names = "--rate", description = "Issue requests at this fixed rate per second instead of at fixed concurrency. --max-requests and --max-requests-per-host are raised to --max-outstanding")
+    public Integer rate;
+
+    @CommandLine.Option(names = "--max-outstanding", defaultValue = "10000", description = "With --rate, requests due while this many are still outstanding are dropped and reported instead of sent")
+    public int maxOutstanding;
+
+    @CommandLine.Option(names = "--token-expiration", defaultValue = "PT5M", description = "Validity of generated JWT tokens, ISO-8601 duration e.g. PT5M")
+    public Duration tokenExpiration;
+
+    @CommandLine.Option(names = "--token-refresh-margin", defaultValue = "PT30S", description = "Cached tokens are re-signed once they are this close to expiration, ISO-8601 duration e.g. PT30S")
+    public Duration tokenRefreshMargin;
+
+    @CommandLine.Option(names = "--metrics-port", description = "Expose OpenMetrics on http://127.0.0.1:<port>/metrics while running")
+    public Integer metricsPort;
+
+    @CommandLine.Mixin
+    public HttpClientOptions httpClientOptions;
+
+    @CommandLine.Spec
+    CommandLine.Model.CommandSpec spec;
+
+    private final Histogram latencies = new ConcurrentHistogram(HIGHEST_TRACKABLE_LATENCY_MICROS, 3);
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private long dropped;
+
+    private JwtSigner jwtSigner;
+    private TokenCache tokenCache;
+    private OkHttpClient httpClient;
+
+    private BenchmarkHttpCommand() {}
+
+    @Override
+    public void run()
+    {
+        if (tokenRefreshMargin.isNegative() || tokenRefreshMargin.compareTo(tokenExpiration) >= 0) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "--token-refresh-margin must not be negative and must be shorter than --token-expiration: " + tokenRefreshMargin);
+        }
+        if (rate != null && rate < 1) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "--rate must be positive: " + rate);
+        }
+        if (concurrency < 1) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "--concurrency must be positive: " + concurrency);
+        }
+        if (maxOutstanding < 1) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "--max-outstanding must be positive: " + maxOutstanding);
+        }
+        HttpServer metricsServer = metricsPort == null ? null : Metrics.startServer("127.0.0.1", metricsPort);
+        jwtSigner = new JwtSigner(SigningKey.forSecret(secret), tokenExpiration);
+        tokenCache = new TokenCache(tokenExpiration, tokenRefreshMargin);
+        if (rate != null) {
+            // otherwise calls queue in the dispatcher, and the reported latency is mostly client side waiting
+            httpClientOptions.maxRequests = Math.max(httpClientOptions.maxRequests, maxOutstanding);
+            httpClientOptions.maxRequestsPerHost = Math.max(httpClientOptions.maxRequestsPerHost, maxOutstanding);
+        }
+        httpClient = HttpClients.getSharedClient(httpClientOptions);
+
+        long start = System.nanoTime();
+        long deadline = start + duration.toNanos();
+        try {
+            if (rate == null) {
+                runFixedConcurrency(deadline);
+            }
+            else {
+                runFixedRate(start, deadline);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        printReport(System.nanoTime() - start);
+        HttpClients.printCallMetrics(httpClientOptions);
+        if (metricsServer != null) {
+            metricsServer.stop(0);
+        }
+    }
+
+    private void runFixedConcurrency(long deadline)
+            throws InterruptedException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                workers.add(executor.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        long requestStart = System.nanoTime();
+                        try (Response response = httpClient.newCall(buildRequest(requestUrl, tokenCache.getToken(jwtSigner, principal))).execute()) {
+                            consumeBody(response);
+                            record(requestStart, String.valueOf(response.code()));
+                        }
+                        catch (IOException e) {
+                            record(requestStart, e.getClass().getSimpleName());
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void runFixedRate(long start, long deadline)
+            throws InterruptedException
+    {
+        long intervalNanos = SECONDS.toNanos(1) / rate;
+        Semaphore outstanding = new Semaphore(maxOutstanding);
+        for (long intended = start; intended < deadline; intended += intervalNanos) {
+            long sleepNanos = intended - System.nanoTime();
+            if (sleepNanos > 0) {
+                NANOSECONDS.sleep(sleepNanos);
+            }
+            // latency is measured from the intended send time, so a slow server cannot hide queueing delay (coordinated omission)
+            long intendedStart = intended;
+            if (!outstanding.tryAcquire()) {
+                // the server has fallen this far behind, queueing more calls would only exhaust memory
+                dropped++;
+                continue;
+            }
+            httpClient.newCall(buildRequest(requestUrl, tokenCache.getToken(jwtSigner, principal))).enqueue(new Callback()
+            {
+                @Override
+                public void onResponse(Call call, Response response)
+                {
+                    try (response) {
+                        consumeBody(response);
+                        record(intendedStart, String.valueOf(response.code()));
+                    }
+                    catch (IOException e) {
+                        record(intendedStart, e.getClass().getSimpleName());
+                    }
+                    finally {
+                        outstanding.release();
+                    }
+                }
+
+                @Override
+                public void onFailure(Call call, IOException e)
+                {
+                    record(intendedStart, e.getClass().getSimpleName());
+                    outstanding.release();
+                }
+            });
+        }
+        outstanding.acquire(maxOutstanding);
+    }
+
+    private static void consumeBody(Response response)
+            throws IOException
+    {
+        ResponseBody body = response.body();
+        if (body != null) {
+            body.source().readAll(Okio.blackhole());
+        }
+    }
+
+    private void record(long startNanos, String outcome)
+    {
+        long latencyMicros = NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        latencies.recordValue(Math.min(latencyMicros, HIGHEST_TRACKABLE_LATENCY_MICROS));
+        outcomes.computeIfAbsent(outcome, ignored -> new LongAdder()).increment();
+    }
+
+    private void printReport(long elapsedNanos)
+    {
+        long requests = latencies.getTotalCount();
+        double elapsedSeconds = elapsedNanos / (double) SECONDS.toNanos(1);
+        System.out.printf("%s requests in %.2f s, %.1f requests/s%n", requests, elapsedSeconds, requests / elapsedSeconds);
+        new TreeMap<>(outcomes).forEach((outcome, count) -> System.out.printf("  %-24s %s%n", outcome, count.sum()));
+        if (dropped > 0) {
+            System.out.printf("%s requests dropped, %s were outstanding when they were due%n", dropped, maxOutstanding);
+        }
+        System.out.println("Latency:");
+        System.out.printf("  mean  %10s%n", formatMicros((long) latencies.getMean()));
+        System.out.printf("  p50   %10s%n", formatMicros(latencies.getValueAtPercentile(50)));
+        System.out.printf("  p90   %10s%n", formatMicros(latencies.getValueAtPercentile(90)));
+        System.out.printf("  p99   %10s%n", formatMicros(latencies.getValueAtPercentile(99)));
+        System.out.printf("  p999  %10s%n", formatMicros(latencies.getValueAtPercentile(99.9)));
+        System.out.printf("  max   %10s%n", formatMicros(latencies.getMaxValue()));
+    }
+
+    private static String formatMicros(long micros)
+    {
+        return format("%.3f ms", micros / (double) MILLISECONDS.toMicros(1));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Latency histograms of the phases of HTTP calls, fed by {@link TimingEventListener}.
+ */
+public class CallMetrics
+{
+    public enum Phase
+    {
+        DNS("dns"),
+        CONNECT("connect"),
+        SECURE_CONNECT("secure_connect"),
+        REQUEST_HEADERS("request_headers"),
+        /**
+         * From the request being sent until the response headers are read, i.e. time to first byte.
+         * OkHttp only signals when it starts reading, which happens right after sending.
+         */
+        RESPONSE_HEADERS("response_headers"),
+        RESPONSE_BODY("response_body"),
+        CALL("call");
+
+        private final String label;
+
+        Phase(String label)
+        {
+            this.label = label;
+        }
+
+        public String getLabel()
+        {
+            return label;
+        }
+    }
+
+    public enum Format
+    {
+        NONE,
+        TEXT,
+        JSON,
+    }
+
+    private static final long HIGHEST_TRACKABLE_MICROS = SECONDS.toMicros(300);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Map<Phase, Histogram> histograms = new EnumMap<>(Phase.class);
+    private final LongAdder tlsHandshakes = new LongAdder();
+    private final LongAdder tlsResumedHandshakes = new LongAdder();
+
+    public CallMetrics()
+    {
+        for (Phase phase : Phase.values()) {
+            histograms.put(phase, new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3));
+        }
+    }
+
+    public void record(Phase phase, long nanos)
+    {
+        histograms.get(phase).recordValue(Math.min(Math.max(NANOSECONDS.toMicros(nanos), 0), HIGHEST_TRACKABLE_MICROS));
+    }
+
+    public void recordHandshake(boolean resumed)
+    {
+        tlsHandshakes.increment();
+        if (resumed) {
+            tlsResumedHandshakes.increment();
+        }
+    }
+
+    public Histogram getHistogram(Phase phase)
+    {
+        return histograms.get(phase);
+    }
+
+    public void print(Format format, PrintStream out)
+    {
+        switch (format) {
+            case NONE:
+                return;
+            case TEXT:
+                printText(out);
+                return;
+            case JSON:
+                out.println(toJson());
+                return;
+        }
+        throw new IllegalArgumentException("Unknown format: " + format);
+    }
+
+    private void printText(PrintStream out)
+    {
+        out.println("HTTP call phases (ms):");
+        out.printf("  %-20s %8s %10s %10s %10s %10s %10s%n", "phase", "count", "mean", "p50", "p90", "p99", "max");
+        histograms.forEach((phase, histogram) -> {
+            if (histogram.getTotalCount() > 0) {
+                out.printf("  %-20s %8s %10.3f %10.3f %10.3f %10.3f %10.3f%n",
+                        phase.getLabel(),
+                        histogram.getTotalCount(),
+                        histogram.getMean() / 1000,
+                        histogram.getValueAtPercentile(50) / 1000.0,
+                        histogram.getValueAtPercentile(90) / 1000.0,
+                        histogram.getValueAtPercentile(99) / 1000.0,
+                        histogram.getMaxValue() / 1000.0);
+            }
+        });
+        long handshakes = tlsHandshakes.sum();
+        if (handshakes > 0) {
+            long resumed = tlsResumedHandshakes.sum();
+            out.printf("TLS handshakes: %s, resumed: %s (%.1f%%)%n", handshakes, resumed, 100.0 * resumed / handshakes);
+        }
+    }
+
+    public String toJson()
+    {
+        Map<String, Object> phases = new LinkedHashMap<>();
+        histograms.forEach((phase, histogram) -> {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("count", histogram.getTotalCount());
+            if (histogram.getTotalCount() > 0) {
+                summary.put("meanMillis", histogram.getMean() / 1000);
+                summary.put("p50Millis", histogram.getValueAtPercentile(50) / 1000.0);
+                summary.put("p90Millis", histogram.getValueAtPercentile(90) / 1000.0);
+                summary.put("p99Millis", histogram.getValueAtPercentile(99) / 1000.0);
+                summary.put("maxMillis", histogram.getMaxValue() / 1000.0);
+            }
+            phases.put(phase.getLabel(), summary);
+        });
+        phases.put("tls_handshakes", Map.of("count", tlsHandshakes.sum(), "resumed", tlsResumedHandshakes.sum()));
+        try {
+            return OBJECT_MAPPER.writeValueAsString(phases);
+        }
+        catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
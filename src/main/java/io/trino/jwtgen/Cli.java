@@ -15,28 +15,89 @@ package io.trino.jwtgen;
 
 import picocli.CommandLine;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
 @CommandLine.Command(
         name = "trino-jwt-gen-cli",
-        usageHelpAutoWidth = true,
-        subcommands = {
-                ExecuteInternalHttpRequestCommand.class,
-                GenerateJwtTokenCommand.class
-        }
+        usageHelpAutoWidth = true
 )
 public class Cli
 {
+    // Subcommands are looked up by name and their classes are only referenced from the suppliers, so running one
+    // command does not load the others, nor what they depend on (okhttp, TLS, the JDK http server...)
+    private static final Map<String, Supplier<Class<?>>> SUBCOMMANDS = new LinkedHashMap<>();
+
+    static {
+        SUBCOMMANDS.put("bench_http", () -> BenchmarkHttpCommand.class);
+        SUBCOMMANDS.put("cluster_fanout", () -> ClusterFanoutCommand.class);
+        SUBCOMMANDS.put("execute_http_request", () -> ExecuteInternalHttpRequestCommand.class);
+        SUBCOMMANDS.put("generate_jwt_token", () -> GenerateJwtTokenCommand.class);
+        SUBCOMMANDS.put("serve", () -> ServeTokensCommand.class);
+    }
+
     @CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "Show this help message and exit")
     public boolean usageHelpRequested;
 
+    @CommandLine.Option(names = "--timings", description = "Report where the time went (startup, parsing, signing, HTTP phases) on stderr")
+    public void setTimings(boolean timings)
+    {
+        if (timings) {
+            Timings.enable();
+        }
+    }
+
     private Cli() {}
 
+    /**
+     * Creates the command line with all subcommands registered.
+     */
     public static CommandLine create()
     {
-        return new CommandLine(new Cli());
+        CommandLine commandLine = new CommandLine(new Cli());
+        SUBCOMMANDS.forEach((name, command) -> commandLine.addSubcommand(name, command.get()));
+        return commandLine;
+    }
+
+    /**
+     * Creates the command line for the given arguments. When they name a subcommand only that one is registered,
+     * otherwise (help, typos) all of them are, so usage and suggestions stay complete.
+     */
+    public static CommandLine create(String[] args)
+    {
+        Supplier<Class<?>> command = findSubcommand(args);
+        if (command == null) {
+            return create();
+        }
+        CommandLine commandLine = new CommandLine(new Cli());
+        commandLine.addSubcommand(command.get());
+        return commandLine;
+    }
+
+    private static Supplier<Class<?>> findSubcommand(String[] args)
+    {
+        for (String arg : args) {
+            if (!arg.startsWith("-")) {
+                return SUBCOMMANDS.get(arg);
+            }
+        }
+        return null;
     }
 
     public static void main(String[] args)
     {
-        System.exit(create().execute(args));
+        long mainStartMillis = System.currentTimeMillis();
+        long parseStart = System.nanoTime();
+        CommandLine commandLine = create(args);
+        commandLine.setExecutionStrategy(parseResult -> {
+            // --timings is only known once the arguments are parsed
+            Timings.recordJvmStartup(mainStartMillis);
+            Timings.record("picocli parsing", parseStart);
+            return new CommandLine.RunLast().execute(parseResult);
+        });
+        int exitCode = commandLine.execute(args);
+        Timings.print(System.err);
+        System.exit(exitCode);
     }
 }
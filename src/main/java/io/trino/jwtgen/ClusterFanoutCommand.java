@@ -0,0 +1,172 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.trino.jwtgen.ConcurrentRequests.RequestResult;
+import okhttp3.OkHttpClient;
+import okio.BufferedSink;
+import okio.Okio;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.google.common.base.Throwables.throwIfInstanceOf;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static java.lang.String.format;
+
+@CommandLine.Command(
+        name = "cluster_fanout",
+        usageHelpAutoWidth = true,
+        description = "Discover the nodes of a cluster from the coordinator's /v1/node and call an internal endpoint on all of them concurrently, at most --max-requests at a time, or as many as the cluster handles well with --adaptive-concurrency"
+)
+public class ClusterFanoutCommand
+        implements Runnable
+{
+    @CommandLine.Option(names = "--secret", required = true, description = "Secret value to generate JWT token from. Use the value of sharedSecret from sep config the environment if sharedSecret is not set")
+    public String secret;
+
+    @CommandLine.Option(names = "--principal", defaultValue = "nodeId", required = true, description = "Value for subject to use for JWT token")
+    public String principal;
+
+    @CommandLine.Option(names = "--coordinator", required = true, description = "Coordinator URL e.g. http://<coordinator>:8080")
+    public String coordinatorUrl;
+
+    @CommandLine.Option(names = "--path", defaultValue = "/v1/info", description = "Path to request on every node, appended to the node URI e.g. /v1/info, /v1/status or /v1/memory")
+    public String path;
+
+    @CommandLine.Option(names = "--include-coordinator", description = "Also request the path on the coordinator")
+    public boolean includeCoordinator;
+
+    @CommandLine.Option(names = "--output", description = "Write responses to this file instead of stdout")
+    public Path outputFile;
+
+    @CommandLine.Mixin
+    public HttpClientOptions httpClientOptions;
+
+    @CommandLine.Mixin
+    public ConcurrencyLimitOptions concurrencyLimitOptions;
+
+    @CommandLine.Option(names = "--token-expiration", defaultValue = "PT5M", description = "Validity of generated JWT tokens, ISO-8601 duration e.g. PT5M")
+    public Duration tokenExpiration;
+
+    @CommandLine.Option(names = "--token-refresh-margin", defaultValue = "PT30S", description = "Cached tokens are re-signed once they are this close to expiration, ISO-8601 duration e.g. PT30S")
+    public Duration tokenRefreshMargin;
+
+    @CommandLine.Spec
+    CommandLine.Model.CommandSpec spec;
+
+    private ClusterFanoutCommand() {}
+
+    @Override
+    public void run()
+    {
+        if (tokenRefreshMargin.isNegative() || tokenRefreshMargin.compareTo(tokenExpiration) >= 0) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "--token-refresh-margin must not be negative and must be shorter than --token-expiration: " + tokenRefreshMargin);
+        }
+        JwtSigner jwtSigner = new JwtSigner(SigningKey.forSecret(secret), tokenExpiration);
+        TokenCache tokenCache = new TokenCache(tokenExpiration, tokenRefreshMargin);
+        AdaptiveConcurrencyLimiter limiter = concurrencyLimitOptions.createLimiter();
+        concurrencyLimitOptions.applyTo(httpClientOptions);
+        OkHttpClient httpClient = HttpClients.getSharedClient(httpClientOptions);
+        try {
+            InternalHttpClient client = new InternalHttpClient(httpClient, () -> tokenCache.getToken(jwtSigner, principal));
+            List<String> nodeUris;
+            try {
+                nodeUris = discoverNodes(client).join();
+            }
+            catch (CompletionException e) {
+                throwIfInstanceOf(e.getCause(), IOException.class);
+                throwIfUnchecked(e.getCause());
+                throw e;
+            }
+            Set<String> urls = new LinkedHashSet<>();
+            if (includeCoordinator) {
+                urls.add(resolve(coordinatorUrl, path));
+            }
+            nodeUris.forEach(uri -> urls.add(resolve(uri, path)));
+            System.out.printf("Requesting %s on %s nodes%n", path, urls.size());
+
+            BufferedSink output = outputFile == null ? Okio.buffer(Okio.sink(System.out)) : Okio.buffer(Okio.sink(Files.newOutputStream(outputFile)));
+            List<RequestResult> results = ConcurrentRequests.executeAll(httpClient, new ArrayList<>(urls), tokenCache.getToken(jwtSigner, principal), output, ConcurrentRequests.Execution.DISPATCHER, limiter);
+            if (outputFile == null) {
+                // do not close stdout
+                output.flush();
+            }
+            else {
+                output.close();
+            }
+
+            ConcurrentRequests.printSummary(results);
+            HttpClients.printCallMetrics(httpClientOptions);
+            if (limiter != null) {
+                limiter.print(System.err);
+            }
+            long failures = results.stream().filter(result -> result.getFailure() != null).count();
+            if (failures > 0) {
+                throw new RuntimeException(format("%s of %s requests failed", failures, urls.size()));
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the URIs of the nodes the coordinator knows about, as listed by {@code /v1/node}.
+     */
+    private CompletableFuture<List<String>> discoverNodes(InternalHttpClient client)
+    {
+        String nodesUrl = resolve(coordinatorUrl, "/v1/node");
+        return client.getJson(nodesUrl).thenApply(nodes -> {
+            if (!nodes.isArray()) {
+                throw new IllegalStateException("Unexpected response from " + nodesUrl + ": " + nodes);
+            }
+            List<String> uris = new ArrayList<>(nodes.size());
+            for (JsonNode node : nodes) {
+                JsonNode uri = node.get("uri");
+                if (uri == null || !uri.isTextual()) {
+                    throw new IllegalStateException("Node without uri in response from " + nodesUrl + ": " + node);
+                }
+                uris.add(uri.asText());
+            }
+            return uris;
+        });
+    }
+
+    private static String resolve(String baseUrl, String path)
+    {
+        if (baseUrl.endsWith("/") && path.startsWith("/")) {
+            return baseUrl + path.substring(1);
+        }
+        if (!baseUrl.endsWith("/") && !path.startsWith("/")) {
+            return baseUrl + "/" + path;
+        }
+        return baseUrl + path;
+    }
+}
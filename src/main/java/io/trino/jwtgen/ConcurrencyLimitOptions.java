@@ -0,0 +1,66 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import picocli.CommandLine;
+
+/**
+ * Adaptive concurrency settings of the commands that request many targets at once.
+ */
+public class ConcurrencyLimitOptions
+{
+    @CommandLine.Option(names = "--adaptive-concurrency", description = "Start with few requests in flight and adapt the number to the cluster, backing off when latency climbs or on 503/429/timeouts. --max-requests and --max-requests-per-host are raised to --max-concurrency")
+    public boolean adaptiveConcurrency;
+
+    @CommandLine.Option(names = "--initial-concurrency", defaultValue = "4", description = "Requests in flight at first with --adaptive-concurrency")
+    public int initialConcurrency;
+
+    @CommandLine.Option(names = "--max-concurrency", defaultValue = "256", description = "Upper bound of requests in flight with --adaptive-concurrency")
+    public int maxConcurrency;
+
+    @CommandLine.Option(names = "--latency-tolerance", defaultValue = "2.0", description = "With --adaptive-concurrency, back off when a response takes this many times longer than the fastest one from the same host")
+    public double latencyTolerance;
+
+    @CommandLine.Spec(CommandLine.Spec.Target.MIXEE)
+    private CommandLine.Model.CommandSpec mixee;
+
+    /**
+     * With {@code --adaptive-concurrency}, raises the dispatcher limits to at least {@code --max-concurrency}. Otherwise
+     * calls would queue in the dispatcher, and the limiter would take that client side wait for server latency and back off.
+     */
+    public void applyTo(HttpClientOptions httpClientOptions)
+    {
+        if (adaptiveConcurrency) {
+            httpClientOptions.maxRequests = Math.max(httpClientOptions.maxRequests, maxConcurrency);
+            httpClientOptions.maxRequestsPerHost = Math.max(httpClientOptions.maxRequestsPerHost, maxConcurrency);
+        }
+    }
+
+    /**
+     * Returns a new limiter, or null without {@code --adaptive-concurrency}.
+     */
+    public AdaptiveConcurrencyLimiter createLimiter()
+    {
+        if (!adaptiveConcurrency) {
+            return null;
+        }
+        if (initialConcurrency < 1 || maxConcurrency < initialConcurrency) {
+            throw new CommandLine.ParameterException(mixee.commandLine(), "--initial-concurrency must be at least 1 and at most --max-concurrency");
+        }
+        if (latencyTolerance <= 1) {
+            throw new CommandLine.ParameterException(mixee.commandLine(), "--latency-tolerance must be greater than 1");
+        }
+        return new AdaptiveConcurrencyLimiter(initialConcurrency, maxConcurrency, latencyTolerance);
+    }
+}
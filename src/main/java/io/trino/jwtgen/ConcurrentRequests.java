@@ -0,0 +1,444 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Source;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static io.trino.jwtgen.ExecuteInternalHttpRequestCommand.buildRequest;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Executes internal requests to several URLs concurrently, on the client's dispatcher or on threads of an executor,
+ * writing each response to a shared output as it completes.
+ */
+public final class ConcurrentRequests
+{
+    // larger bodies are spilled to a temp file while they wait for the shared output, so heap use stays small with
+    // hundreds of requests in flight
+    private static final long MAX_BUFFERED_BODY_BYTES = 64 * 1024;
+
+    private ConcurrentRequests() {}
+
+    public enum Execution
+    {
+        /**
+         * Enqueue all calls on the client's dispatcher, completing them in callbacks.
+         */
+        DISPATCHER,
+        /**
+         * Execute every call with a blocking {@link Call#execute()} on its own virtual thread. Requires Java 21.
+         */
+        VIRTUAL_THREADS,
+    }
+
+    /**
+     * Returns once all requests completed, with one result per URL in completion order.
+     *
+     * @param limiter bounds the requests in flight, or null to send them all at once
+     */
+    public static List<RequestResult> executeAll(OkHttpClient httpClient, List<String> urls, String jwt, BufferedSink output, Execution execution, AdaptiveConcurrencyLimiter limiter)
+            throws InterruptedException
+    {
+        switch (execution) {
+            case DISPATCHER:
+                return executeAll(httpClient, urls, jwt, output, limiter);
+            case VIRTUAL_THREADS:
+                ExecutorService executor = newVirtualThreadPerTaskExecutor();
+                try {
+                    return executeAllBlocking(httpClient, urls, jwt, output, executor, limiter);
+                }
+                finally {
+                    executor.shutdownNow();
+                }
+        }
+        throw new IllegalArgumentException("Unknown execution: " + execution);
+    }
+
+    /**
+     * Enqueues all calls on the client's dispatcher, which bounds how many run at once.
+     */
+    public static List<RequestResult> executeAll(OkHttpClient httpClient, List<String> urls, String jwt, BufferedSink output)
+            throws InterruptedException
+    {
+        return executeAll(httpClient, urls, jwt, output, (AdaptiveConcurrencyLimiter) null);
+    }
+
+    private static List<RequestResult> executeAll(OkHttpClient httpClient, List<String> urls, String jwt, BufferedSink output, AdaptiveConcurrencyLimiter limiter)
+            throws InterruptedException
+    {
+        // invalid URLs fail here, before any request is sent or permit acquired
+        List<String> hosts = hostsOf(urls);
+        InternalHttpClient client = new InternalHttpClient(httpClient, () -> jwt);
+        ResultCollector results = new ResultCollector(urls.size(), output);
+        CountDownLatch finished = new CountDownLatch(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            String url = urls.get(i);
+            String host = hosts.get(i);
+            long start = limiter == null ? System.nanoTime() : limiter.acquire();
+            client.get(url).whenComplete((response, failure) -> {
+                long latency = System.nanoTime() - start;
+                IOException ioFailure = failure == null || failure instanceof IOException ? (IOException) failure : new IOException(failure);
+                try {
+                    if (response != null) {
+                        results.onResponse(url, start, response);
+                    }
+                    else {
+                        results.onFailure(url, start, ioFailure);
+                    }
+                }
+                finally {
+                    try {
+                        if (limiter != null) {
+                            limiter.release(host, start, latency, response == null ? 0 : response.code(), ioFailure);
+                        }
+                    }
+                    finally {
+                        finished.countDown();
+                    }
+                }
+            });
+        }
+        finished.await();
+        return results.getResults();
+    }
+
+    /**
+     * Submits one blocking call per URL to the executor. The dispatcher limits do not apply, the executor alone
+     * decides how many calls run at once.
+     */
+    public static List<RequestResult> executeAllBlocking(OkHttpClient httpClient, List<String> urls, String jwt, BufferedSink output, ExecutorService executor)
+            throws InterruptedException
+    {
+        return executeAllBlocking(httpClient, urls, jwt, output, executor, null);
+    }
+
+    private static List<RequestResult> executeAllBlocking(OkHttpClient httpClient, List<String> urls, String jwt, BufferedSink output, ExecutorService executor, AdaptiveConcurrencyLimiter limiter)
+            throws InterruptedException
+    {
+        // invalid URLs fail here, before anything is sent, rather than in a task where no result would be recorded
+        List<String> hosts = hostsOf(urls);
+        List<Request> requests = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            requests.add(buildRequest(url, jwt));
+        }
+        ResultCollector results = new ResultCollector(urls.size(), output);
+        CountDownLatch finished = new CountDownLatch(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            String url = urls.get(i);
+            Request request = requests.get(i);
+            String host = hosts.get(i);
+            long acquired = limiter == null ? 0 : limiter.acquire();
+            executor.execute(() -> {
+                long start = limiter == null ? System.nanoTime() : acquired;
+                long latency = 0;
+                int statusCode = 0;
+                IOException failure = null;
+                try {
+                    Response response = httpClient.newCall(request).execute();
+                    latency = System.nanoTime() - start;
+                    statusCode = response.code();
+                    results.onResponse(url, start, response);
+                }
+                catch (IOException e) {
+                    latency = System.nanoTime() - start;
+                    failure = e;
+                    results.onFailure(url, start, e);
+                }
+                finally {
+                    try {
+                        if (limiter != null) {
+                            limiter.release(host, start, latency, statusCode, failure);
+                        }
+                    }
+                    finally {
+                        finished.countDown();
+                    }
+                }
+            });
+        }
+        finished.await();
+        return results.getResults();
+    }
+
+    /**
+     * The host and port the URL points to, the unit the limiter compares latency by.
+     */
+    public static String hostOf(String url)
+    {
+        HttpUrl httpUrl = HttpUrl.get(url);
+        return httpUrl.host() + ":" + httpUrl.port();
+    }
+
+    /**
+     * Returns {@link #hostOf} of every URL, failing on the first invalid one.
+     */
+    public static List<String> hostsOf(List<String> urls)
+    {
+        List<String> hosts = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            hosts.add(hostOf(url));
+        }
+        return hosts;
+    }
+
+    /**
+     * Looked up reflectively, the build targets Java 11.
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor()
+    {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later, running on Java " + Runtime.version());
+        }
+        catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Error creating virtual thread executor", e);
+        }
+    }
+
+    /**
+     * Reads the response into {@code buffer}, or for a body over {@link #MAX_BUFFERED_BODY_BYTES} its headers into
+     * {@code buffer} and the body into a temp file, which is returned and must be deleted by the caller.
+     */
+    private static Path readResponse(Response response, long headersLatencyMillis, Buffer buffer)
+            throws IOException
+    {
+        buffer.writeUtf8(formatResponseHeaders(response, headersLatencyMillis));
+        ResponseBody body = response.body();
+        if (body == null) {
+            return null;
+        }
+        BufferedSource source = body.source();
+        if (!source.request(MAX_BUFFERED_BODY_BYTES + 1)) {
+            source.readAll(buffer);
+            return null;
+        }
+        Path bodyFile = Files.createTempFile("response", ".body");
+        try (BufferedSink sink = Okio.buffer(Okio.sink(bodyFile))) {
+            sink.writeAll(source);
+        }
+        catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(bodyFile);
+            throw e;
+        }
+        return bodyFile;
+    }
+
+    private static String formatResponseHeaders(Response response, long headersLatencyMillis)
+    {
+        return format("Got: %s in %s ms, headers %s, body ", response, headersLatencyMillis, response.headers());
+    }
+
+    private static void writeResponse(BufferedSink output, Buffer buffer, Path bodyFile)
+            throws IOException
+    {
+        output.writeAll(buffer);
+        if (bodyFile != null) {
+            try (Source body = Okio.source(bodyFile)) {
+                output.writeAll(body);
+            }
+        }
+        output.writeUtf8(System.lineSeparator());
+        output.flush();
+    }
+
+    public static void printSummary(List<RequestResult> results)
+    {
+        System.out.println("Latency summary:");
+        results.stream()
+                .sorted(Comparator.comparing(RequestResult::getUrl))
+                .forEach(result -> System.out.printf("%8s ms  %s  %s%n",
+                        result.getLatencyMillis(),
+                        result.getFailure() == null ? String.valueOf(result.getStatusCode()) : "ERR",
+                        result.getUrl()));
+    }
+
+    /**
+     * Writes responses one at a time and collects the results. Uses a {@link ReentrantLock} rather than
+     * {@code synchronized}, so virtual threads blocked on the lock or on reading a body do not pin their carrier.
+     */
+    private static class ResultCollector
+    {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final List<RequestResult> results;
+        private final BufferedSink output;
+        // a single response holds up nobody, so it is copied straight to the output
+        private final boolean streaming;
+
+        public ResultCollector(int expectedResults, BufferedSink output)
+        {
+            this.results = new ArrayList<>(expectedResults);
+            this.output = requireNonNull(output, "output is null");
+            this.streaming = expectedResults == 1;
+        }
+
+        public void onResponse(String url, long start, Response response)
+        {
+            if (streaming) {
+                streamResponse(url, start, response);
+                return;
+            }
+            // read the body before taking the lock, so a slow response does not hold up the others
+            Buffer buffer = new Buffer();
+            Path bodyFile = null;
+            IOException failure = null;
+            try (response) {
+                bodyFile = readResponse(response, NANOSECONDS.toMillis(System.nanoTime() - start), buffer);
+            }
+            catch (IOException e) {
+                failure = e;
+            }
+            long latencyNanos = System.nanoTime() - start;
+            try {
+                lock.lock();
+                try {
+                    if (failure == null) {
+                        try {
+                            writeResponse(output, buffer, bodyFile);
+                        }
+                        catch (IOException e) {
+                            failure = e;
+                        }
+                    }
+                    addResult(new RequestResult(url, response.code(), latencyNanos, failure));
+                }
+                finally {
+                    lock.unlock();
+                }
+            }
+            finally {
+                if (bodyFile != null) {
+                    bodyFile.toFile().delete();
+                }
+            }
+        }
+
+        private void streamResponse(String url, long start, Response response)
+        {
+            long headersLatencyMillis = NANOSECONDS.toMillis(System.nanoTime() - start);
+            IOException failure = null;
+            lock.lock();
+            try (response) {
+                try {
+                    output.writeUtf8(formatResponseHeaders(response, headersLatencyMillis));
+                    ResponseBody body = response.body();
+                    if (body != null) {
+                        output.writeAll(body.source());
+                    }
+                    output.writeUtf8(System.lineSeparator());
+                    output.flush();
+                }
+                catch (IOException e) {
+                    failure = e;
+                }
+                addResult(new RequestResult(url, response.code(), System.nanoTime() - start, failure));
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        private void addResult(RequestResult result)
+        {
+            if (result.getFailure() != null) {
+                System.out.printf("Failed: %s while reading body after %s ms: %s%n", result.getUrl(), result.getLatencyMillis(), result.getFailure());
+            }
+            results.add(result);
+        }
+
+        public void onFailure(String url, long start, IOException failure)
+        {
+            RequestResult result = new RequestResult(url, 0, System.nanoTime() - start, failure);
+            lock.lock();
+            try {
+                results.add(result);
+                System.out.printf("Failed: %s after %s ms: %s%n", url, result.getLatencyMillis(), failure);
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        public List<RequestResult> getResults()
+        {
+            lock.lock();
+            try {
+                return new ArrayList<>(results);
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public static class RequestResult
+    {
+        private final String url;
+        private final int statusCode;
+        private final long latencyNanos;
+        private final IOException failure;
+
+        public RequestResult(String url, int statusCode, long latencyNanos, IOException failure)
+        {
+            this.url = url;
+            this.statusCode = statusCode;
+            this.latencyNanos = latencyNanos;
+            this.failure = failure;
+        }
+
+        public String getUrl()
+        {
+            return url;
+        }
+
+        public int getStatusCode()
+        {
+            return statusCode;
+        }
+
+        public long getLatencyMillis()
+        {
+            return NANOSECONDS.toMillis(latencyNanos);
+        }
+
+        public IOException getFailure()
+        {
+            return failure;
+        }
+    }
+}
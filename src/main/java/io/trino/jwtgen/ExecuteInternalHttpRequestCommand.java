@@ -13,33 +13,35 @@
  */
 package io.trino.jwtgen;
 
-import com.google.common.hash.Hashing;
-import io.jsonwebtoken.JwtBuilder;
-import io.jsonwebtoken.impl.DefaultJwtBuilder;
-import io.jsonwebtoken.io.Serializer;
-import io.jsonwebtoken.jackson.io.JacksonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.trino.jwtgen.ConcurrentRequests.RequestResult;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
-import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.Okio;
 import picocli.CommandLine;
 
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
-
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
-import java.security.GeneralSecurityException;
-import java.security.Key;
-import java.security.SecureRandom;
-import java.security.cert.X509Certificate;
-import java.time.ZonedDateTime;
-import java.util.Date;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static com.google.common.net.HttpHeaders.ACCEPT_ENCODING;
-import static io.jsonwebtoken.security.Keys.hmacShaKeyFor;
+import static java.lang.String.format;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.stream.Collectors.toList;
 
 @CommandLine.Command(
         name = "execute_http_request",
@@ -48,8 +50,9 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 public class ExecuteInternalHttpRequestCommand
         implements Runnable
 {
-    private static final String TRINO_INTERNAL_BEARER = "X-Trino-Internal-Bearer";
-    private static final Serializer<Map<String, ?>> JWT_SERIALIZER = new JacksonSerializer<>();
+    public static final String TRINO_INTERNAL_BEARER = "X-Trino-Internal-Bearer";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
     @CommandLine.Option(names = "--secret", required = true, description = "Secret value to generate JWT token from. Use the value of sharedSecret from sep config the environment if sharedSecret is not set")
     public String secret;
@@ -57,98 +60,266 @@ public class ExecuteInternalHttpRequestCommand
     @CommandLine.Option(names = "--principal", defaultValue = "nodeId", required = true, description = "Value for subject to use for JWT token")
     public String principal;
 
-    @CommandLine.Option(names = "--request", required = true, description = "Request URL e.g. http://<coordinator>:8080/v1/service\n")
-    public String requestUrl;
+    @CommandLine.Option(names = "--request", description = "Request URL e.g. http://<coordinator>:8080/v1/service, can be repeated to execute several requests concurrently\n")
+    public List<String> requestUrls = new ArrayList<>();
+
+    @CommandLine.Option(names = "--requests-file", description = "File with one request URL per line, executed concurrently together with any --request URLs")
+    public Path requestsFile;
+
+    @CommandLine.Option(names = "--output", description = "Write responses to this file instead of stdout")
+    public Path outputFile;
+
+    @CommandLine.Mixin
+    public HttpClientOptions httpClientOptions;
+
+    @CommandLine.Mixin
+    public ConcurrencyLimitOptions concurrencyLimitOptions;
+
+    @CommandLine.Option(names = "--execution", defaultValue = "DISPATCHER", description = "How concurrent requests are executed: DISPATCHER enqueues them bounded by --max-requests, VIRTUAL_THREADS runs each blocking call on its own virtual thread (Java 21+), one of: ${COMPLETION-CANDIDATES}")
+    public ConcurrentRequests.Execution execution;
+
+    @CommandLine.Option(names = "--interval", description = "Repeat the requests at this fixed interval, ISO-8601 duration e.g. PT1S, reusing the HTTP client and token")
+    public Duration interval;
+
+    @CommandLine.Option(names = "--iterations", description = "How many times to execute the requests, 0 to repeat until interrupted. Defaults to 1, or 0 with --interval")
+    public Integer iterations;
+
+    @CommandLine.Option(names = "--diff", description = "Print only the lines of each response body that changed since the previous iteration, JSON is pretty printed first. Bodies are held in memory")
+    public boolean diff;
+
+    @CommandLine.Option(names = "--metrics-port", description = "Expose OpenMetrics on http://127.0.0.1:<port>/metrics while running")
+    public Integer metricsPort;
+
+    @CommandLine.Option(names = "--token-expiration", defaultValue = "PT5M", description = "Validity of generated JWT tokens, ISO-8601 duration e.g. PT5M")
+    public Duration tokenExpiration;
+
+    @CommandLine.Option(names = "--token-refresh-margin", defaultValue = "PT30S", description = "Cached tokens are re-signed once they are this close to expiration, ISO-8601 duration e.g. PT30S")
+    public Duration tokenRefreshMargin;
+
+    @CommandLine.Spec
+    CommandLine.Model.CommandSpec spec;
+
+    private JwtSigner jwtSigner;
+    private TokenCache tokenCache;
 
     private ExecuteInternalHttpRequestCommand() {}
 
     @Override
     public void run()
     {
+        List<String> urls = getRequestUrls();
+        if (tokenRefreshMargin.isNegative() || tokenRefreshMargin.compareTo(tokenExpiration) >= 0) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "--token-refresh-margin must not be negative and must be shorter than --token-expiration: " + tokenRefreshMargin);
+        }
+        if (execution == ConcurrentRequests.Execution.VIRTUAL_THREADS && Runtime.version().feature() < 21) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "--execution VIRTUAL_THREADS requires Java 21 or later, running on Java " + Runtime.version());
+        }
+        if (diff && execution != ConcurrentRequests.Execution.DISPATCHER) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "--diff is only supported with --execution DISPATCHER");
+        }
+        if (iterations != null && iterations < 0) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "--iterations must not be negative");
+        }
+        int iterationCount = iterations != null ? iterations : interval == null ? 1 : 0;
+        long intervalNanos = interval == null ? 0 : interval.toNanos();
+        AdaptiveConcurrencyLimiter limiter = concurrencyLimitOptions.createLimiter();
+        concurrencyLimitOptions.applyTo(httpClientOptions);
         try {
             String jwt = generateJwt();
             System.out.println("generated JWT");
             System.out.println(jwt);
 
-            Request.Builder builder = new Request.Builder()
-                    .addHeader(TRINO_INTERNAL_BEARER, jwt)
-                    .url(requestUrl)
-                    .get();
-            builder.header(ACCEPT_ENCODING, "identity");
-            Request request = builder.build();
-            OkHttpClient httpClient = buildHttpClient();
-            Response response = httpClient.newCall(request).execute();
+            HttpServer metricsServer = metricsPort == null ? null : Metrics.startServer("127.0.0.1", metricsPort);
+            OkHttpClient httpClient = HttpClients.getSharedClient(httpClientOptions);
+            InternalHttpClient client = new InternalHttpClient(httpClient, () -> tokenCache.getToken(jwtSigner, principal));
+            Map<Integer, List<String>> previousBodies = new HashMap<>();
+            BufferedSink output = openOutput();
+            long requests = 0;
+            long failures = 0;
+            long firstStart = System.nanoTime();
+            for (int iteration = 0; iterationCount == 0 || iteration < iterationCount; iteration++) {
+                if (iteration > 0) {
+                    // fixed rate, an iteration that overran its interval is followed immediately by the next one
+                    long delay = firstStart + iteration * intervalNanos - System.nanoTime();
+                    if (delay > 0) {
+                        NANOSECONDS.sleep(delay);
+                    }
+                    jwt = generateJwt();
+                }
+                if (iterationCount != 1) {
+                    output.writeUtf8(format("=== %s%n", Instant.now()));
+                }
+                List<RequestResult> results = diff
+                        ? executeWithDiff(client, urls, output, previousBodies, limiter)
+                        : ConcurrentRequests.executeAll(httpClient, urls, jwt, output, execution, limiter);
+                output.flush();
 
-            System.out.printf("Got: %s, headers %s, body %s%n", response, response.headers(), response.body() != null ? response.body().string() : "");
+                if (urls.size() > 1) {
+                    ConcurrentRequests.printSummary(results);
+                }
+                requests += results.size();
+                failures += results.stream().filter(result -> result.getFailure() != null).count();
+            }
+            closeOutput(output);
+
+            HttpClients.printCallMetrics(httpClientOptions);
+            if (limiter != null) {
+                limiter.print(System.err);
+            }
+            if (metricsServer != null) {
+                metricsServer.stop(0);
+            }
+            if (failures > 0) {
+                throw new RuntimeException(format("%s of %s requests failed", failures, requests));
+            }
         }
         catch (URISyntaxException uriSyntaxException) {
-            throw new RuntimeException("invalid request: " + requestUrl);
+            throw new RuntimeException("invalid request: " + urls);
         }
         catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
         }
     }
 
-    private String generateJwt()
-            throws URISyntaxException
+    private BufferedSink openOutput()
+            throws IOException
     {
-        return newJwtBuilder()
-                .signWith(generateKey())
-                .setSubject(principal)
-                .setExpiration(Date.from(ZonedDateTime.now().plusMinutes(5).toInstant()))
-                .compact();
+        if (outputFile == null) {
+            return Okio.buffer(Okio.sink(System.out));
+        }
+        return Okio.buffer(Okio.sink(Files.newOutputStream(outputFile)));
     }
 
-    private OkHttpClient buildHttpClient()
+    private void closeOutput(BufferedSink output)
+            throws IOException
     {
-        OkHttpClient.Builder builder = new OkHttpClient.Builder();
-        setupInsecureSsl(builder);
-        return builder.build();
+        if (outputFile == null) {
+            // do not close stdout
+            output.flush();
+        }
+        else {
+            output.close();
+        }
     }
 
-    private Key generateKey()
+    private List<String> getRequestUrls()
     {
-        return hmacShaKeyFor(Hashing.sha256().hashString(secret, UTF_8).asBytes());
+        List<String> urls = new ArrayList<>(requestUrls);
+        if (requestsFile != null) {
+            try {
+                Files.readAllLines(requestsFile, UTF_8).stream()
+                        .map(String::trim)
+                        .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                        .forEach(urls::add);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (urls.isEmpty()) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Missing required option: '--request=<requestUrls>' or '--requests-file=<requestsFile>'");
+        }
+        return urls;
     }
 
-    private static JwtBuilder newJwtBuilder()
+    static Request buildRequest(String url, String jwt)
     {
-        return new DefaultJwtBuilder()
-                .serializeToJsonWith(JWT_SERIALIZER);
+        Request.Builder builder = new Request.Builder()
+                .addHeader(TRINO_INTERNAL_BEARER, jwt)
+                .url(url)
+                .get();
+        builder.header(ACCEPT_ENCODING, "identity");
+        return builder.build();
     }
 
-    public static void setupInsecureSsl(OkHttpClient.Builder clientBuilder)
+    /**
+     * Executes the requests concurrently and prints, in request order, each body or what changed in it since the
+     * previous iteration.
+     */
+    private static List<RequestResult> executeWithDiff(InternalHttpClient client, List<String> urls, BufferedSink output, Map<Integer, List<String>> previousBodies, AdaptiveConcurrencyLimiter limiter)
+            throws IOException, InterruptedException
     {
-        try {
-            X509TrustManager trustAllCerts = new X509TrustManager()
-            {
-                @Override
-                public void checkClientTrusted(X509Certificate[] chain, String authType)
-                {
-                    throw new UnsupportedOperationException("checkClientTrusted should not be called");
+        // invalid URLs fail here, before any request is sent or permit acquired
+        List<String> hosts = ConcurrentRequests.hostsOf(urls);
+        // by index rather than URL, a URL given twice is diffed against its own previous response
+        AtomicReferenceArray<String> bodies = new AtomicReferenceArray<>(urls.size());
+        List<CompletableFuture<RequestResult>> futures = new ArrayList<>(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            int index = i;
+            String url = urls.get(i);
+            String host = hosts.get(i);
+            long start = limiter == null ? System.nanoTime() : limiter.acquire();
+            futures.add(client.get(url).handle((response, failure) -> {
+                long latency = System.nanoTime() - start;
+                RequestResult result;
+                if (failure != null) {
+                    result = new RequestResult(url, 0, latency, failure instanceof IOException ? (IOException) failure : new IOException(failure));
                 }
-
-                @Override
-                public void checkServerTrusted(X509Certificate[] chain, String authType)
-                {
-                    // skip validation of server certificate
+                else {
+                    try (response) {
+                        ResponseBody body = response.body();
+                        bodies.set(index, body == null ? "" : body.string());
+                        result = new RequestResult(url, response.code(), System.nanoTime() - start, null);
+                    }
+                    catch (IOException e) {
+                        result = new RequestResult(url, response.code(), System.nanoTime() - start, e);
+                    }
                 }
-
-                @Override
-                public X509Certificate[] getAcceptedIssuers()
-                {
-                    return new X509Certificate[0];
+                if (limiter != null) {
+                    limiter.release(host, start, latency, result.getStatusCode(), result.getFailure());
                 }
-            };
+                return result;
+            }));
+        }
 
-            SSLContext sslContext = SSLContext.getInstance("SSL");
-            sslContext.init(null, new TrustManager[] {trustAllCerts}, new SecureRandom());
+        List<RequestResult> results = InternalHttpClient.allOf(futures).join();
+        for (int i = 0; i < results.size(); i++) {
+            RequestResult result = results.get(i);
+            if (result.getFailure() != null) {
+                output.writeUtf8(format("Failed: %s after %s ms: %s%n", result.getUrl(), result.getLatencyMillis(), result.getFailure()));
+                continue;
+            }
+            output.writeUtf8(format("Got: %s %s in %s ms%n", result.getStatusCode(), result.getUrl(), result.getLatencyMillis()));
+            List<String> lines = prettyPrint(bodies.get(i)).lines().collect(toList());
+            List<String> previous = previousBodies.put(i, lines);
+            List<String> changes = previous == null ? lines : LineDiff.diff(previous, lines);
+            if (previous != null && changes.isEmpty()) {
+                output.writeUtf8("(unchanged)").writeUtf8(System.lineSeparator());
+            }
+            for (String line : changes) {
+                output.writeUtf8(line).writeUtf8(System.lineSeparator());
+            }
+        }
+        return results;
+    }
 
-            clientBuilder.sslSocketFactory(sslContext.getSocketFactory(), trustAllCerts);
-            clientBuilder.hostnameVerifier((hostname, session) -> true);
+    private static String prettyPrint(String body)
+    {
+        try {
+            return OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(OBJECT_MAPPER.readTree(body));
         }
-        catch (GeneralSecurityException e) {
-            throw new RuntimeException("Error setting up SSL: " + e.getMessage(), e);
+        catch (IOException e) {
+            // not JSON
+            return body;
         }
     }
+
+    private String generateJwt()
+            throws URISyntaxException
+    {
+        if (tokenCache == null) {
+            jwtSigner = new JwtSigner(SigningKey.forSecret(secret), tokenExpiration);
+            tokenCache = new TokenCache(tokenExpiration, tokenRefreshMargin);
+        }
+        return tokenCache.getToken(jwtSigner, principal);
+    }
+
+    public static void setupInsecureSsl(OkHttpClient.Builder clientBuilder)
+    {
+        TlsContexts.setupInsecureSsl(clientBuilder);
+    }
 }
@@ -13,20 +13,17 @@
  */
 package io.trino.jwtgen;
 
-import com.google.common.hash.Hashing;
-
-import io.jsonwebtoken.JwtBuilder;
-import io.jsonwebtoken.impl.DefaultJwtBuilder;
-import io.jsonwebtoken.io.Serializer;
-import io.jsonwebtoken.jackson.io.JacksonSerializer;
 import picocli.CommandLine;
 
-import java.security.Key;
-import java.time.ZonedDateTime;
-import java.util.Date;
-import java.util.Map;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
 
-import static io.jsonwebtoken.security.Keys.hmacShaKeyFor;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 @CommandLine.Command(
@@ -36,39 +33,67 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 public class GenerateJwtTokenCommand
         implements Runnable
 {
-    private static final Serializer<Map<String, ?>> JWT_SERIALIZER = new JacksonSerializer<>();
-
     @CommandLine.Option(names = "--secret", required = true, description = "Secret value to generate JWT token from")
     public String secret;
 
     @CommandLine.Option(names = "--principal", defaultValue = "nodeId", required = true, description = "Value for subject to use for JWT token")
     public String principal;
 
+    @CommandLine.Option(names = "--count", defaultValue = "1", description = "Number of tokens to generate for the principal, one per line")
+    public int count;
+
+    @CommandLine.Option(names = "--principals-file", description = "File with one principal per line; generates one token per principal, cannot be combined with --principal or --count")
+    public Path principalsFile;
+
+    @CommandLine.Option(names = "--signer", defaultValue = "JJWT", description = "Token encoder, one of: ${COMPLETION-CANDIDATES}. FAST produces identical tokens without jjwt and is much cheaper per token")
+    public JwtSigner.Implementation signer;
+
+    @CommandLine.Spec
+    CommandLine.Model.CommandSpec spec;
+
     private GenerateJwtTokenCommand() {}
 
     @Override
     public void run()
     {
-        System.out.println(generateJwt());
-    }
-
-    private String generateJwt()
-    {
-        return newJwtBuilder()
-                .signWith(generateKey())
-                .setSubject(principal)
-                .setExpiration(Date.from(ZonedDateTime.now().plusMinutes(5).toInstant()))
-                .compact();
-    }
-
-    private Key generateKey()
-    {
-        return hmacShaKeyFor(Hashing.sha256().hashString(secret, UTF_8).asBytes());
+        if (count < 1) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "--count must be positive: " + count);
+        }
+        CommandLine.ParseResult parseResult = spec.commandLine().getParseResult();
+        if (principalsFile != null && (parseResult.hasMatchedOption("--principal") || parseResult.hasMatchedOption("--count"))) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "--principals-file cannot be combined with --principal or --count");
+        }
+        // derive the key and set up the builder once, bulk runs then only pay for claims serialization and signing
+        JwtSigner jwtSigner = JwtSigner.forSecret(secret, signer);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, UTF_8));
+        try {
+            if (principalsFile == null) {
+                for (int i = 0; i < count; i++) {
+                    writeJwt(out, jwtSigner, principal);
+                }
+            }
+            else {
+                try (Stream<String> principals = Files.lines(principalsFile, UTF_8)) {
+                    principals.map(String::trim)
+                            .filter(line -> !line.isEmpty())
+                            .forEach(line -> writeJwt(out, jwtSigner, line));
+                }
+            }
+            out.flush();
+        }
+        catch (IOException | UncheckedIOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
-    private static JwtBuilder newJwtBuilder()
+    private static void writeJwt(Writer out, JwtSigner jwtSigner, String subject)
     {
-        return new DefaultJwtBuilder()
-                .serializeToJsonWith(JWT_SERIALIZER);
+        try {
+            out.write(jwtSigner.sign(subject));
+            out.write(System.lineSeparator());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
@@ -0,0 +1,245 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Encodes the fixed shape {@code {"alg":"HS256"}.{"sub":...,"exp":...}} tokens without going through jjwt.
+ * <p>
+ * The output is byte for byte what {@code DefaultJwtBuilder} with {@code JacksonSerializer} produces for the
+ * same subject and expiration. JSON, base64url and the signature are written into per-thread buffers with a
+ * per-thread {@link Mac}, so the only allocation per token is the resulting String.
+ */
+public class Hs256JwtEncoder
+{
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int SIGNATURE_LENGTH = 32;
+    // base64url of {"alg":"HS256"}
+    private static final byte[] ENCODED_HEADER = "eyJhbGciOiJIUzI1NiJ9".getBytes(ISO_8859_1);
+    private static final byte[] SUBJECT_PREFIX = "{\"sub\":\"".getBytes(ISO_8859_1);
+    private static final byte[] EXPIRATION_PREFIX = "\",\"exp\":".getBytes(ISO_8859_1);
+    private static final byte[] BASE64_URL = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes(ISO_8859_1);
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(ISO_8859_1);
+
+    private final ThreadLocal<Buffers> buffers;
+
+    public Hs256JwtEncoder(Key key)
+    {
+        requireNonNull(key, "key is null");
+        this.buffers = ThreadLocal.withInitial(() -> new Buffers(key));
+    }
+
+    public String encode(String subject, long expirationEpochSeconds)
+    {
+        Buffers buffers = this.buffers.get();
+
+        int payloadLength = writePayload(buffers, subject, expirationEpochSeconds);
+
+        byte[] token = buffers.ensureTokenCapacity(ENCODED_HEADER.length + 1 + base64Length(payloadLength) + 1 + base64Length(SIGNATURE_LENGTH));
+        System.arraycopy(ENCODED_HEADER, 0, token, 0, ENCODED_HEADER.length);
+        int position = ENCODED_HEADER.length;
+        token[position++] = '.';
+        position = base64Url(buffers.payload, payloadLength, token, position);
+
+        try {
+            buffers.mac.update(token, 0, position);
+            buffers.mac.doFinal(buffers.signature, 0);
+        }
+        catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+        token[position++] = '.';
+        position = base64Url(buffers.signature, SIGNATURE_LENGTH, token, position);
+
+        return new String(token, 0, position, ISO_8859_1);
+    }
+
+    private static int writePayload(Buffers buffers, String subject, long expirationEpochSeconds)
+    {
+        // worst case: every char escaped as backslash-u sequence, plus prefix, suffix and a 20 digit number
+        byte[] payload = buffers.ensurePayloadCapacity(SUBJECT_PREFIX.length + subject.length() * 6 + EXPIRATION_PREFIX.length + 21);
+        System.arraycopy(SUBJECT_PREFIX, 0, payload, 0, SUBJECT_PREFIX.length);
+        int position = SUBJECT_PREFIX.length;
+        for (int i = 0; i < subject.length(); i++) {
+            char c = subject.charAt(i);
+            if (c < 0x80) {
+                position = writeAsciiJsonChar(payload, position, c);
+            }
+            else if (c < 0x800) {
+                payload[position++] = (byte) (0xC0 | (c >> 6));
+                payload[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if (Character.isSurrogate(c)) {
+                // Jackson writes characters outside of the BMP as escaped surrogates rather than as 4 byte UTF-8
+                position = writeUnicodeEscape(payload, position, c);
+            }
+            else {
+                payload[position++] = (byte) (0xE0 | (c >> 12));
+                payload[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                payload[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        System.arraycopy(EXPIRATION_PREFIX, 0, payload, position, EXPIRATION_PREFIX.length);
+        position += EXPIRATION_PREFIX.length;
+        position = writeLong(payload, position, expirationEpochSeconds);
+        payload[position++] = '}';
+        return position;
+    }
+
+    // escapes the same characters as Jackson's default character escapes
+    private static int writeAsciiJsonChar(byte[] buffer, int position, char c)
+    {
+        if (c >= 0x20) {
+            if (c == '"' || c == '\\') {
+                buffer[position++] = '\\';
+            }
+            buffer[position++] = (byte) c;
+            return position;
+        }
+        buffer[position++] = '\\';
+        switch (c) {
+            case '\b':
+                buffer[position++] = 'b';
+                return position;
+            case '\t':
+                buffer[position++] = 't';
+                return position;
+            case '\n':
+                buffer[position++] = 'n';
+                return position;
+            case '\f':
+                buffer[position++] = 'f';
+                return position;
+            case '\r':
+                buffer[position++] = 'r';
+                return position;
+            default:
+                return writeUnicodeEscape(buffer, position - 1, c);
+        }
+    }
+
+    private static int writeUnicodeEscape(byte[] buffer, int position, char c)
+    {
+        buffer[position++] = '\\';
+        buffer[position++] = 'u';
+        buffer[position++] = HEX[(c >> 12) & 0xF];
+        buffer[position++] = HEX[(c >> 8) & 0xF];
+        buffer[position++] = HEX[(c >> 4) & 0xF];
+        buffer[position++] = HEX[c & 0xF];
+        return position;
+    }
+
+    private static int writeLong(byte[] buffer, int position, long value)
+    {
+        if (value == Long.MIN_VALUE) {
+            byte[] digits = Long.toString(value).getBytes(ISO_8859_1);
+            System.arraycopy(digits, 0, buffer, position, digits.length);
+            return position + digits.length;
+        }
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int start = position;
+        do {
+            buffer[position++] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        while (value != 0);
+        // digits were written least significant first
+        for (int left = start, right = position - 1; left < right; left++, right--) {
+            byte digit = buffer[left];
+            buffer[left] = buffer[right];
+            buffer[right] = digit;
+        }
+        return position;
+    }
+
+    private static int base64Length(int length)
+    {
+        return (length * 4 + 2) / 3;
+    }
+
+    /**
+     * Unpadded base64url, as used by JWT.
+     */
+    private static int base64Url(byte[] source, int length, byte[] target, int position)
+    {
+        int i = 0;
+        for (; i + 3 <= length; i += 3) {
+            int bits = (source[i] & 0xFF) << 16 | (source[i + 1] & 0xFF) << 8 | (source[i + 2] & 0xFF);
+            target[position++] = BASE64_URL[(bits >>> 18) & 0x3F];
+            target[position++] = BASE64_URL[(bits >>> 12) & 0x3F];
+            target[position++] = BASE64_URL[(bits >>> 6) & 0x3F];
+            target[position++] = BASE64_URL[bits & 0x3F];
+        }
+        int remaining = length - i;
+        if (remaining == 1) {
+            int bits = (source[i] & 0xFF) << 16;
+            target[position++] = BASE64_URL[(bits >>> 18) & 0x3F];
+            target[position++] = BASE64_URL[(bits >>> 12) & 0x3F];
+        }
+        else if (remaining == 2) {
+            int bits = (source[i] & 0xFF) << 16 | (source[i + 1] & 0xFF) << 8;
+            target[position++] = BASE64_URL[(bits >>> 18) & 0x3F];
+            target[position++] = BASE64_URL[(bits >>> 12) & 0x3F];
+            target[position++] = BASE64_URL[(bits >>> 6) & 0x3F];
+        }
+        return position;
+    }
+
+    private static final class Buffers
+    {
+        private final Mac mac;
+        private final byte[] signature = new byte[SIGNATURE_LENGTH];
+        private byte[] payload = new byte[256];
+        private byte[] token = new byte[512];
+
+        private Buffers(Key key)
+        {
+            try {
+                mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+            }
+            catch (GeneralSecurityException e) {
+                throw new IllegalArgumentException("Key cannot be used for " + ALGORITHM + ": " + e.getMessage(), e);
+            }
+        }
+
+        private byte[] ensurePayloadCapacity(int capacity)
+        {
+            if (payload.length < capacity) {
+                payload = Arrays.copyOf(payload, capacity);
+            }
+            return payload;
+        }
+
+        private byte[] ensureTokenCapacity(int capacity)
+        {
+            if (token.length < capacity) {
+                token = Arrays.copyOf(token, capacity);
+            }
+            return token;
+        }
+    }
+}
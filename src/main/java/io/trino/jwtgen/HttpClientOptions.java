@@ -0,0 +1,142 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import okhttp3.Protocol;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+
+import static okhttp3.Protocol.H2_PRIOR_KNOWLEDGE;
+import static okhttp3.Protocol.HTTP_1_1;
+
+/**
+ * HTTP client settings shared by the commands that talk to Trino. Options with equal values map to the same shared client.
+ */
+public class HttpClientOptions
+{
+    @CommandLine.Option(names = "--max-requests", defaultValue = "64", description = "Maximum number of requests executing concurrently")
+    public int maxRequests;
+
+    @CommandLine.Option(names = "--max-requests-per-host", defaultValue = "5", description = "Maximum number of requests executing concurrently against a single host")
+    public int maxRequestsPerHost;
+
+    @CommandLine.Option(names = "--max-idle-connections", defaultValue = "5", description = "Maximum number of idle connections kept in the connection pool")
+    public int maxIdleConnections;
+
+    @CommandLine.Option(names = "--keep-alive", defaultValue = "PT5M", description = "How long idle pooled connections are kept open, ISO-8601 duration e.g. PT5M")
+    public Duration keepAlive;
+
+    @CommandLine.Option(names = "--call-metrics", defaultValue = "NONE", description = "Print latency histograms of DNS, connect, TLS, request and response phases of all calls at the end, one of: ${COMPLETION-CANDIDATES}")
+    public CallMetrics.Format callMetrics;
+
+    @CommandLine.Option(names = "--tls-session-cache-size", defaultValue = "20480", description = "Maximum number of TLS sessions cached for resumption, 0 for no limit")
+    public int tlsSessionCacheSize;
+
+    @CommandLine.Option(names = "--tls-session-timeout", defaultValue = "PT24H", description = "How long cached TLS sessions can be resumed, ISO-8601 duration e.g. PT24H")
+    public Duration tlsSessionTimeout;
+
+    @CommandLine.Option(names = "--truststore", description = "Validate server certificates against this truststore (PKCS12 or JKS) instead of trusting all servers")
+    public Path truststore;
+
+    @CommandLine.Option(names = "--truststore-password", description = "Password of the --truststore")
+    public String truststorePassword;
+
+    @CommandLine.Option(names = "--ca-bundle", description = "Validate server certificates against the CA certificates in this PEM file, can be combined with --truststore")
+    public Path caBundle;
+
+    @CommandLine.Spec(CommandLine.Spec.Target.MIXEE)
+    private CommandLine.Model.CommandSpec mixee;
+
+    private List<Protocol> protocols;
+
+    public TrustMaterial getTrustMaterial()
+    {
+        if (truststorePassword != null && truststore == null) {
+            throw new CommandLine.ParameterException(mixee.commandLine(), "--truststore-password requires --truststore");
+        }
+        return new TrustMaterial(truststore, truststorePassword, caBundle);
+    }
+
+    public List<Protocol> getProtocols()
+    {
+        return protocols;
+    }
+
+    @CommandLine.Option(
+            names = "--protocols",
+            split = ",",
+            defaultValue = "h2,http/1.1",
+            converter = ProtocolConverter.class,
+            description = "Comma separated protocols to negotiate over TLS, e.g. h2,http/1.1 or http/1.1; h2_prior_knowledge alone speaks cleartext HTTP/2 to http:// URLs")
+    public void setProtocols(List<Protocol> protocols)
+    {
+        // picocli resets multi-value options with an empty list before applying the default or the given values
+        if (!protocols.isEmpty() && protocols.contains(H2_PRIOR_KNOWLEDGE) && protocols.size() > 1) {
+            throw new CommandLine.ParameterException(mixee.commandLine(), "--protocols: h2_prior_knowledge cannot be combined with other protocols");
+        }
+        if (!protocols.isEmpty() && !protocols.contains(H2_PRIOR_KNOWLEDGE) && !protocols.contains(HTTP_1_1)) {
+            throw new CommandLine.ParameterException(mixee.commandLine(), "--protocols: must contain http/1.1 or be h2_prior_knowledge");
+        }
+        this.protocols = List.copyOf(protocols);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        HttpClientOptions that = (HttpClientOptions) o;
+        return maxRequests == that.maxRequests &&
+                maxRequestsPerHost == that.maxRequestsPerHost &&
+                maxIdleConnections == that.maxIdleConnections &&
+                Objects.equals(keepAlive, that.keepAlive) &&
+                callMetrics == that.callMetrics &&
+                Objects.equals(protocols, that.protocols) &&
+                tlsSessionCacheSize == that.tlsSessionCacheSize &&
+                Objects.equals(tlsSessionTimeout, that.tlsSessionTimeout) &&
+                Objects.equals(truststore, that.truststore) &&
+                Objects.equals(truststorePassword, that.truststorePassword) &&
+                Objects.equals(caBundle, that.caBundle);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(maxRequests, maxRequestsPerHost, maxIdleConnections, keepAlive, callMetrics, protocols, tlsSessionCacheSize, tlsSessionTimeout, truststore, truststorePassword, caBundle);
+    }
+
+    public static class ProtocolConverter
+            implements CommandLine.ITypeConverter<Protocol>
+    {
+        @Override
+        public Protocol convert(String value)
+        {
+            try {
+                return Protocol.get(value);
+            }
+            catch (IOException e) {
+                throw new CommandLine.TypeConversionException("unknown protocol " + value + ", expected one of: h2, http/1.1, h2_prior_knowledge");
+            }
+        }
+    }
+}
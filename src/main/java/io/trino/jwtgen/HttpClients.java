@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Lazily built OkHttp clients shared within the JVM, so repeated calls reuse pooled connections and TLS sessions.
+ */
+public final class HttpClients
+{
+    private static final Map<HttpClientOptions, OkHttpClient> CLIENTS = new ConcurrentHashMap<>();
+    private static final CallMetrics CALL_METRICS = new CallMetrics();
+
+    private HttpClients() {}
+
+    public static OkHttpClient getSharedClient(HttpClientOptions options)
+    {
+        return CLIENTS.computeIfAbsent(options, HttpClients::buildHttpClient);
+    }
+
+    /**
+     * Call phase metrics of all shared clients with {@code --call-metrics} enabled.
+     */
+    public static CallMetrics getCallMetrics()
+    {
+        return CALL_METRICS;
+    }
+
+    public static void printCallMetrics(HttpClientOptions options)
+    {
+        CALL_METRICS.print(options.callMetrics, System.err);
+    }
+
+    private static OkHttpClient buildHttpClient(HttpClientOptions options)
+    {
+        long start = System.nanoTime();
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(options.maxRequests);
+        dispatcher.setMaxRequestsPerHost(options.maxRequestsPerHost);
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(options.maxIdleConnections, options.keepAlive.toMillis(), MILLISECONDS))
+                .protocols(options.getProtocols());
+        TlsContexts.setupSsl(builder, options.getTrustMaterial(), options.tlsSessionCacheSize, options.tlsSessionTimeout, resumed -> {
+            CALL_METRICS.recordHandshake(resumed);
+            Metrics.recordTlsHandshake(resumed);
+        });
+        if (options.callMetrics != CallMetrics.Format.NONE) {
+            builder.eventListenerFactory(TimingEventListener.factory(CALL_METRICS));
+        }
+        else if (Timings.isEnabled() || Metrics.isEnabled()) {
+            builder.eventListenerFactory(TimingEventListener.factory(null));
+        }
+        OkHttpClient client = builder.build();
+        Timings.record("http client construction", start);
+        return client;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+import static io.trino.jwtgen.ExecuteInternalHttpRequestCommand.buildRequest;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Non-blocking internal requests. Every request gets a token from the supplier when it is sent and completes on an
+ * OkHttp dispatcher thread, so calls can be chained without blocking a thread per request, e.g.
+ * <pre>{@code
+ * client.getJson(coordinatorUrl + "/v1/query/" + queryId)
+ *         .thenCompose(query -> allOf(taskUris(query).stream()
+ *                 .map(client::getJson)
+ *                 .collect(toList())))
+ * }</pre>
+ * Stages chained with the non-async {@code then*} methods also run on dispatcher threads and must not block.
+ */
+public class InternalHttpClient
+{
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final OkHttpClient httpClient;
+    private final Supplier<String> tokenSupplier;
+
+    public InternalHttpClient(OkHttpClient httpClient, Supplier<String> tokenSupplier)
+    {
+        this.httpClient = requireNonNull(httpClient, "httpClient is null");
+        this.tokenSupplier = requireNonNull(tokenSupplier, "tokenSupplier is null");
+    }
+
+    /**
+     * Sends a GET with the internal bearer token. The caller owns the response and must close it.
+     */
+    public CompletableFuture<Response> get(String url)
+    {
+        return execute(httpClient.newCall(buildRequest(url, tokenSupplier.get())));
+    }
+
+    /**
+     * Sends a GET and parses the body as JSON, failing on a non-successful status.
+     */
+    public CompletableFuture<JsonNode> getJson(String url)
+    {
+        return get(url).thenApply(response -> {
+            try (response) {
+                ResponseBody body = response.body();
+                if (!response.isSuccessful() || body == null) {
+                    throw new CompletionException(new IOException(format("%s returned %s", url, response.code())));
+                }
+                return OBJECT_MAPPER.readTree(body.byteStream());
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Error reading response of " + url, e);
+            }
+        });
+    }
+
+    /**
+     * Enqueues the call, completing the future with the response or the failure. Cancelling the future cancels the call.
+     */
+    public static CompletableFuture<Response> execute(Call call)
+    {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        call.enqueue(new Callback()
+        {
+            @Override
+            public void onResponse(Call call, Response response)
+            {
+                if (!future.complete(response)) {
+                    response.close();
+                }
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e)
+            {
+                future.completeExceptionally(e);
+            }
+        });
+        future.whenComplete((response, failure) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Completes with all values in order once all futures completed, or as soon as one fails with its failure. The other
+     * futures are not cancelled.
+     */
+    public static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> futures)
+    {
+        CompletableFuture<List<T>> result = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    List<T> values = new ArrayList<>(futures.size());
+                    futures.forEach(future -> values.add(future.join()));
+                    return values;
+                });
+        for (CompletableFuture<T> future : futures) {
+            future.whenComplete((value, failure) -> {
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                }
+            });
+        }
+        return result;
+    }
+}
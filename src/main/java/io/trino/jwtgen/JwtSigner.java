@@ -0,0 +1,118 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.impl.DefaultJwtBuilder;
+import io.jsonwebtoken.io.Serializer;
+import io.jsonwebtoken.jackson.io.JacksonSerializer;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Signs internal communication JWTs the same way Trino does. Thread safe, each thread reuses its own builder.
+ */
+public class JwtSigner
+{
+    public enum Implementation
+    {
+        /**
+         * jjwt {@code DefaultJwtBuilder} with Jackson serialization.
+         */
+        JJWT,
+        /**
+         * {@link Hs256JwtEncoder}, produces identical tokens with far less work and garbage per token.
+         */
+        FAST,
+    }
+
+    public static final Duration DEFAULT_EXPIRATION = Duration.ofMinutes(5);
+
+    private static final Serializer<Map<String, ?>> JWT_SERIALIZER = new JacksonSerializer<>();
+
+    private final SigningKey signingKey;
+    private final Duration expiration;
+    private final ThreadLocal<JwtBuilder> jwtBuilder;
+    private final Hs256JwtEncoder fastEncoder;
+
+    public JwtSigner(SigningKey signingKey, Duration expiration)
+    {
+        this(signingKey, expiration, Implementation.JJWT);
+    }
+
+    public JwtSigner(SigningKey signingKey, Duration expiration, Implementation implementation)
+    {
+        this.signingKey = requireNonNull(signingKey, "signingKey is null");
+        this.expiration = requireNonNull(expiration, "expiration is null");
+        requireNonNull(implementation, "implementation is null");
+        this.jwtBuilder = ThreadLocal.withInitial(() -> new DefaultJwtBuilder()
+                .serializeToJsonWith(JWT_SERIALIZER)
+                .signWith(signingKey.getKey()));
+        this.fastEncoder = implementation == Implementation.FAST ? new Hs256JwtEncoder(signingKey.getKey()) : null;
+    }
+
+    public static JwtSigner forSecret(String secret)
+    {
+        return forSecret(secret, Implementation.JJWT);
+    }
+
+    public static JwtSigner forSecret(String secret, Implementation implementation)
+    {
+        return new JwtSigner(SigningKey.forSecret(secret), DEFAULT_EXPIRATION, implementation);
+    }
+
+    public SigningKey getSigningKey()
+    {
+        return signingKey;
+    }
+
+    public Duration getExpiration()
+    {
+        return expiration;
+    }
+
+    public String sign(String subject)
+    {
+        return sign(subject, Instant.now().plus(expiration));
+    }
+
+    public String sign(String subject, Instant expiresAt)
+    {
+        if (!Timings.isEnabled() && !Metrics.isEnabled()) {
+            return encode(subject, expiresAt);
+        }
+        long start = System.nanoTime();
+        String token = encode(subject, expiresAt);
+        long nanos = System.nanoTime() - start;
+        Timings.recordNanos("jwt build", nanos);
+        Metrics.recordTokenSigned(nanos);
+        return token;
+    }
+
+    private String encode(String subject, Instant expiresAt)
+    {
+        if (fastEncoder != null) {
+            return fastEncoder.encode(subject, expiresAt.getEpochSecond());
+        }
+        return jwtBuilder.get()
+                .setSubject(subject)
+                .setExpiration(Date.from(expiresAt))
+                .compact();
+    }
+}
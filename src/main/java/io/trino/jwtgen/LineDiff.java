@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Line based diff of two texts, listing removed lines prefixed with {@code -} and added lines with {@code +}.
+ */
+public final class LineDiff
+{
+    // above this many cells the longest common subsequence table is not worth it, the changed block is listed as a whole
+    private static final long MAX_TABLE_CELLS = 16_000_000;
+
+    private LineDiff() {}
+
+    /**
+     * Returns the changed lines, empty when the texts are equal.
+     */
+    public static List<String> diff(List<String> before, List<String> after)
+    {
+        // lines around the change are usually equal, only the middle needs the table
+        int prefix = 0;
+        while (prefix < before.size() && prefix < after.size() && before.get(prefix).equals(after.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < before.size() - prefix && suffix < after.size() - prefix &&
+                before.get(before.size() - 1 - suffix).equals(after.get(after.size() - 1 - suffix))) {
+            suffix++;
+        }
+        List<String> removed = before.subList(prefix, before.size() - suffix);
+        List<String> added = after.subList(prefix, after.size() - suffix);
+
+        List<String> changes = new ArrayList<>();
+        if ((long) removed.size() * added.size() > MAX_TABLE_CELLS) {
+            removed.forEach(line -> changes.add("- " + line));
+            added.forEach(line -> changes.add("+ " + line));
+            return changes;
+        }
+
+        // common[i][j] is the length of the longest common subsequence of removed[i..] and added[j..]
+        int[][] common = new int[removed.size() + 1][added.size() + 1];
+        for (int i = removed.size() - 1; i >= 0; i--) {
+            for (int j = added.size() - 1; j >= 0; j--) {
+                common[i][j] = removed.get(i).equals(added.get(j)) ? common[i + 1][j + 1] + 1 : Math.max(common[i + 1][j], common[i][j + 1]);
+            }
+        }
+        int i = 0;
+        int j = 0;
+        while (i < removed.size() || j < added.size()) {
+            if (i < removed.size() && j < added.size() && removed.get(i).equals(added.get(j))) {
+                i++;
+                j++;
+            }
+            else if (j == added.size() || (i < removed.size() && common[i + 1][j] >= common[i][j + 1])) {
+                changes.add("- " + removed.get(i++));
+            }
+            else {
+                changes.add("+ " + added.get(j++));
+            }
+        }
+        return changes;
+    }
+}
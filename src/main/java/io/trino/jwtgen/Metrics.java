@@ -0,0 +1,243 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Process wide counters and histograms of the long-running modes, exposed in OpenMetrics text format on
+ * {@code /metrics}. Recording is a no-op until {@link #enable()} is called, which creates the registry, so runs without
+ * metrics do not load the histogram classes.
+ */
+public final class Metrics
+{
+    public static final String CONTENT_TYPE_OPENMETRICS = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    private static final String PREFIX = "trino_jwt_gen_";
+    private static final double[] LATENCY_BUCKETS_SECONDS = {0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private static volatile Registry registry;
+
+    private Metrics() {}
+
+    public static synchronized void enable()
+    {
+        if (registry == null) {
+            registry = new Registry();
+        }
+    }
+
+    public static boolean isEnabled()
+    {
+        return registry != null;
+    }
+
+    /**
+     * Starts a loopback HTTP server exposing {@code /metrics} and enables recording.
+     */
+    public static HttpServer startServer(String bindAddress, int port)
+    {
+        HttpServer server;
+        try {
+            server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        server.createContext("/metrics", Metrics::handle);
+        server.start();
+        enable();
+        System.err.printf("Serving metrics on http://%s:%s/metrics%n", bindAddress, server.getAddress().getPort());
+        return server;
+    }
+
+    public static void handle(HttpExchange exchange)
+            throws IOException
+    {
+        try {
+            byte[] body = toOpenMetrics().getBytes(UTF_8);
+            exchange.getResponseHeaders().set(CONTENT_TYPE, CONTENT_TYPE_OPENMETRICS);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    public static void recordTokenSigned(long nanos)
+    {
+        Registry registry = Metrics.registry;
+        if (registry != null) {
+            registry.tokensSigned.increment();
+            registry.signingLatency.record(nanos);
+        }
+    }
+
+    public static void recordTokenServed()
+    {
+        Registry registry = Metrics.registry;
+        if (registry != null) {
+            registry.tokensServed.increment();
+        }
+    }
+
+    /**
+     * @param status HTTP status code, or the failure for calls that did not get a response
+     */
+    public static void recordHttpCall(String status, long nanos)
+    {
+        Registry registry = Metrics.registry;
+        if (registry != null) {
+            registry.httpCalls.computeIfAbsent(status, ignored -> new LongAdder()).increment();
+            registry.httpCallLatency.record(nanos);
+        }
+    }
+
+    public static void recordConnectionAcquired(boolean newConnection)
+    {
+        Registry registry = Metrics.registry;
+        if (registry != null) {
+            registry.connectionsAcquired.increment();
+            if (newConnection) {
+                registry.connectionsOpened.increment();
+            }
+        }
+    }
+
+    public static void recordTlsHandshake(boolean resumed)
+    {
+        Registry registry = Metrics.registry;
+        if (registry != null) {
+            registry.tlsHandshakes.increment();
+            if (resumed) {
+                registry.tlsResumedHandshakes.increment();
+            }
+        }
+    }
+
+    public static String toOpenMetrics()
+    {
+        enable();
+        Registry registry = Metrics.registry;
+        StringBuilder out = new StringBuilder();
+        counter(out, "tokens_signed", "JWT tokens signed", registry.tokensSigned.sum());
+        counter(out, "tokens_served", "Tokens handed out by the serve command, including cached ones", registry.tokensServed.sum());
+        histogram(out, "signing_latency_seconds", "Time to sign a JWT token", registry.signingLatency);
+
+        out.append("# TYPE ").append(PREFIX).append("http_calls counter\n");
+        out.append("# HELP ").append(PREFIX).append("http_calls HTTP calls by response status\n");
+        new TreeMap<>(registry.httpCalls).forEach((status, count) -> out.append(PREFIX).append("http_calls_total{status=\"").append(status).append("\"} ").append(count.sum()).append('\n'));
+        histogram(out, "http_call_latency_seconds", "Duration of HTTP calls", registry.httpCallLatency);
+
+        long acquired = registry.connectionsAcquired.sum();
+        long opened = registry.connectionsOpened.sum();
+        counter(out, "connections_acquired", "Connections used by HTTP calls", acquired);
+        counter(out, "connections_opened", "New connections opened by HTTP calls", opened);
+        double reuseRatio = acquired == 0 ? 0 : (acquired - opened) / (double) acquired;
+        out.append("# TYPE ").append(PREFIX).append("connection_pool_reuse_ratio gauge\n");
+        out.append("# HELP ").append(PREFIX).append("connection_pool_reuse_ratio Fraction of HTTP calls served by a pooled connection\n");
+        out.append(PREFIX).append("connection_pool_reuse_ratio ").append(reuseRatio).append('\n');
+
+        counter(out, "tls_handshakes", "TLS handshakes of new connections", registry.tlsHandshakes.sum());
+        counter(out, "tls_resumed_handshakes", "TLS handshakes that resumed a cached session", registry.tlsResumedHandshakes.sum());
+
+        out.append("# EOF\n");
+        return out.toString();
+    }
+    private static void counter(StringBuilder out, String name, String help, long value)
+    {
+        out.append("# TYPE ").append(PREFIX).append(name).append(" counter\n");
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append(PREFIX).append(name).append("_total ").append(value).append('\n');
+    }
+
+    private static void histogram(StringBuilder out, String name, String help, LatencyHistogram latencies)
+    {
+        // copy under the lock, so that buckets, count and sum are consistent with each other
+        Histogram histogram;
+        long sumNanos;
+        latencies.lock.lock();
+        try {
+            histogram = latencies.histogram.copy();
+            sumNanos = latencies.sumNanos;
+        }
+        finally {
+            latencies.lock.unlock();
+        }
+        out.append("# TYPE ").append(PREFIX).append(name).append(" histogram\n");
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        for (double bucket : LATENCY_BUCKETS_SECONDS) {
+            long count = histogram.getTotalCount() == 0 ? 0 : histogram.getCountBetweenValues(0, (long) (bucket * SECONDS.toMicros(1)));
+            out.append(PREFIX).append(name).append("_bucket{le=\"").append(bucket).append("\"} ").append(count).append('\n');
+        }
+        out.append(PREFIX).append(name).append("_bucket{le=\"+Inf\"} ").append(histogram.getTotalCount()).append('\n');
+        out.append(PREFIX).append(name).append("_count ").append(histogram.getTotalCount()).append('\n');
+        out.append(PREFIX).append(name).append("_sum ").append(sumNanos / (double) SECONDS.toNanos(1)).append('\n');
+    }
+
+    private static final class Registry
+    {
+        private final LongAdder tokensSigned = new LongAdder();
+        private final LongAdder tokensServed = new LongAdder();
+        private final LatencyHistogram signingLatency = new LatencyHistogram();
+        private final Map<String, LongAdder> httpCalls = new ConcurrentHashMap<>();
+        private final LatencyHistogram httpCallLatency = new LatencyHistogram();
+        private final LongAdder connectionsAcquired = new LongAdder();
+        private final LongAdder connectionsOpened = new LongAdder();
+        private final LongAdder tlsHandshakes = new LongAdder();
+        private final LongAdder tlsResumedHandshakes = new LongAdder();
+    }
+
+    private static final class LatencyHistogram
+    {
+        private static final long HIGHEST_TRACKABLE_MICROS = SECONDS.toMicros(300);
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Histogram histogram = new Histogram(HIGHEST_TRACKABLE_MICROS, 2);
+        private long sumNanos;
+
+        private void record(long nanos)
+        {
+            long micros = Math.min(Math.max(NANOSECONDS.toMicros(nanos), 0), HIGHEST_TRACKABLE_MICROS);
+            lock.lock();
+            try {
+                histogram.recordValue(micros);
+                sumNanos += nanos;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.net.URLDecoder;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
+import static io.trino.jwtgen.ExecuteInternalHttpRequestCommand.TRINO_INTERNAL_BEARER;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+@CommandLine.Command(
+        name = "serve",
+        usageHelpAutoWidth = true,
+        description = "Keep running and serve internal bearer tokens over loopback HTTP: GET /token[?principal=<principal>], OpenMetrics on GET /metrics"
+)
+public class ServeTokensCommand
+        implements Runnable
+{
+    @CommandLine.Option(names = "--secret", required = true, description = "Secret value to generate JWT token from")
+    public String secret;
+
+    @CommandLine.Option(names = "--principal", defaultValue = "nodeId", description = "Subject to use when the request does not specify a principal")
+    public String principal;
+
+    @CommandLine.Option(names = "--bind", defaultValue = "127.0.0.1", description = "Loopback address to listen on. Tokens are served without authentication, so other addresses are rejected")
+    public String bindAddress;
+
+    @CommandLine.Option(names = "--port", defaultValue = "8099", description = "Port to listen on, 0 picks a free port")
+    public int port;
+
+    @CommandLine.Option(names = "--threads", defaultValue = "4", description = "Number of threads handling requests")
+    public int threads;
+
+    @CommandLine.Option(names = "--token-expiration", defaultValue = "PT5M", description = "Validity of served JWT tokens, ISO-8601 duration e.g. PT5M")
+    public Duration tokenExpiration;
+
+    @CommandLine.Option(names = "--token-refresh-margin", defaultValue = "PT30S", description = "Served tokens are reused until they are this close to expiration, ISO-8601 duration e.g. PT30S")
+    public Duration tokenRefreshMargin;
+
+    @CommandLine.Option(names = "--signer", defaultValue = "JJWT", description = "Token encoder, one of: ${COMPLETION-CANDIDATES}. FAST produces identical tokens without jjwt and is much cheaper per token")
+    public JwtSigner.Implementation signer;
+
+    @CommandLine.Spec
+    CommandLine.Model.CommandSpec spec;
+
+    private ServeTokensCommand() {}
+
+    @Override
+    public void run()
+    {
+        if (tokenRefreshMargin.isNegative() || tokenRefreshMargin.compareTo(tokenExpiration) >= 0) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "--token-refresh-margin must not be negative and must be shorter than --token-expiration: " + tokenRefreshMargin);
+        }
+        InetAddress address;
+        try {
+            address = InetAddress.getByName(bindAddress);
+        }
+        catch (UnknownHostException e) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "--bind: unknown host " + bindAddress);
+        }
+        // anyone who can reach the port gets a token for any principal
+        if (!address.isLoopbackAddress()) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "--bind must be a loopback address: " + bindAddress);
+        }
+        JwtSigner jwtSigner = new JwtSigner(SigningKey.forSecret(secret), tokenExpiration, signer);
+        TokenCache tokenCache = new TokenCache(tokenExpiration, tokenRefreshMargin);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // without TCP_NODELAY the split header and body writes stall on delayed ACKs, adding ~40ms per token
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server;
+        try {
+            server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        server.setExecutor(executor);
+        server.createContext("/token", exchange -> handleToken(exchange, jwtSigner, tokenCache));
+        server.createContext("/metrics", Metrics::handle);
+        Metrics.enable();
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(0);
+            executor.shutdownNow();
+            stopped.countDown();
+        }));
+        server.start();
+        System.out.printf("Serving %s tokens on http://%s:%s/token%n", TRINO_INTERNAL_BEARER, bindAddress, server.getAddress().getPort());
+
+        try {
+            stopped.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleToken(HttpExchange exchange, JwtSigner jwtSigner, TokenCache tokenCache)
+            throws IOException
+    {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                respond(exchange, 405, "Only GET is supported\n");
+                return;
+            }
+            String subject = queryParameter(exchange.getRequestURI().getRawQuery(), "principal");
+            respond(exchange, 200, tokenCache.getToken(jwtSigner, subject == null ? principal : subject));
+            Metrics.recordTokenServed();
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body)
+            throws IOException
+    {
+        byte[] bytes = body.getBytes(UTF_8);
+        exchange.getResponseHeaders().set(CONTENT_TYPE, "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String queryParameter(String rawQuery, String name)
+    {
+        if (rawQuery == null) {
+            return null;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator > 0 && URLDecoder.decode(parameter.substring(0, separator), UTF_8).equals(name)) {
+                return URLDecoder.decode(parameter.substring(separator + 1), UTF_8);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import com.google.common.hash.Hashing;
+
+import java.security.Key;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.jsonwebtoken.security.Keys.hmacShaKeyFor;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * HMAC key derived from the Trino shared secret the same way Trino does it (SHA-256 of the secret).
+ * Keys are memoized per secret, so signing the same secret repeatedly does not re-hash it.
+ */
+public final class SigningKey
+{
+    private static final Map<String, SigningKey> KEYS = new ConcurrentHashMap<>();
+
+    private final Key key;
+    private final String fingerprint;
+
+    private SigningKey(Key key, String fingerprint)
+    {
+        this.key = requireNonNull(key, "key is null");
+        this.fingerprint = requireNonNull(fingerprint, "fingerprint is null");
+    }
+
+    public static SigningKey forSecret(String secret)
+    {
+        requireNonNull(secret, "secret is null");
+        return KEYS.computeIfAbsent(secret, SigningKey::derive);
+    }
+
+    private static SigningKey derive(String secret)
+    {
+        long start = System.nanoTime();
+        byte[] keyBytes = Hashing.sha256().hashString(secret, UTF_8).asBytes();
+        // fingerprint is a hash of the derived key, so it identifies the secret without revealing it
+        String fingerprint = Hashing.sha256().hashBytes(keyBytes).toString().substring(0, 16);
+        SigningKey signingKey = new SigningKey(hmacShaKeyFor(keyBytes), fingerprint);
+        Timings.record("key derivation", start);
+        return signingKey;
+    }
+
+    public Key getKey()
+    {
+        return key;
+    }
+
+    public String getFingerprint()
+    {
+        return fingerprint;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SigningKey{fingerprint=" + fingerprint + "}";
+    }
+}
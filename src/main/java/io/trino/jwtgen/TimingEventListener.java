@@ -0,0 +1,179 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import static io.trino.jwtgen.CallMetrics.Phase.CALL;
+import static io.trino.jwtgen.CallMetrics.Phase.CONNECT;
+import static io.trino.jwtgen.CallMetrics.Phase.DNS;
+import static io.trino.jwtgen.CallMetrics.Phase.REQUEST_HEADERS;
+import static io.trino.jwtgen.CallMetrics.Phase.RESPONSE_BODY;
+import static io.trino.jwtgen.CallMetrics.Phase.RESPONSE_HEADERS;
+import static io.trino.jwtgen.CallMetrics.Phase.SECURE_CONNECT;
+
+/**
+ * Times the phases of a single call and records them into {@link Timings}, {@link Metrics} and, if given,
+ * {@link CallMetrics}. OkHttp creates one listener per call.
+ */
+public class TimingEventListener
+        extends EventListener
+{
+    private final CallMetrics callMetrics;
+
+    private long callStart;
+    private long dnsStart;
+    private long connectStart;
+    private long secureConnectStart;
+    private long requestHeadersStart;
+    private long requestSent;
+    private long responseBodyStart;
+    private boolean connected;
+    private String status = "unknown";
+
+    public TimingEventListener(CallMetrics callMetrics)
+    {
+        this.callMetrics = callMetrics;
+    }
+
+    public static Factory factory(CallMetrics callMetrics)
+    {
+        return call -> new TimingEventListener(callMetrics);
+    }
+
+    @Override
+    public void callStart(Call call)
+    {
+        callStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName)
+    {
+        dnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList)
+    {
+        record(DNS, dnsStart);
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy)
+    {
+        connectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectStart(Call call)
+    {
+        // TCP connect is done once TLS starts, the handshake is reported separately
+        record(CONNECT, connectStart);
+        secureConnectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake)
+    {
+        record(SECURE_CONNECT, secureConnectStart);
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol)
+    {
+        if (secureConnectStart == 0) {
+            record(CONNECT, connectStart);
+        }
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection)
+    {
+        Metrics.recordConnectionAcquired(connectStart != 0 && !connected);
+        connected = true;
+    }
+
+    @Override
+    public void requestHeadersStart(Call call)
+    {
+        requestHeadersStart = System.nanoTime();
+    }
+
+    @Override
+    public void requestHeadersEnd(Call call, Request request)
+    {
+        requestSent = System.nanoTime();
+        record(REQUEST_HEADERS, requestHeadersStart);
+    }
+
+    @Override
+    public void requestBodyEnd(Call call, long byteCount)
+    {
+        requestSent = System.nanoTime();
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response)
+    {
+        record(RESPONSE_HEADERS, requestSent);
+        status = String.valueOf(response.code());
+    }
+
+    @Override
+    public void responseBodyStart(Call call)
+    {
+        responseBodyStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount)
+    {
+        record(RESPONSE_BODY, responseBodyStart);
+    }
+
+    @Override
+    public void callEnd(Call call)
+    {
+        record(CALL, callStart);
+        Metrics.recordHttpCall(status, System.nanoTime() - callStart);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe)
+    {
+        Metrics.recordHttpCall(ioe.getClass().getSimpleName(), System.nanoTime() - callStart);
+    }
+
+    private void record(CallMetrics.Phase phase, long start)
+    {
+        long nanos = System.nanoTime() - start;
+        Timings.recordNanos(phase.getLabel(), nanos);
+        if (callMetrics != null) {
+            callMetrics.record(phase, nanos);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Process wide wall-clock phase timings, enabled with {@code --timings}. Phases recorded more than once (e.g. one per
+ * token or per HTTP call) are summed up. Recording is a no-op unless enabled.
+ */
+public final class Timings
+{
+    private static final Map<String, Phase> PHASES = new LinkedHashMap<>();
+    private static volatile boolean enabled;
+
+    private Timings() {}
+
+    public static void enable()
+    {
+        enabled = true;
+    }
+
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Records a phase that started at {@code startNanos} (from {@link System#nanoTime()}) and ends now.
+     */
+    public static void record(String phase, long startNanos)
+    {
+        if (enabled) {
+            recordNanos(phase, System.nanoTime() - startNanos);
+        }
+    }
+
+    public static void recordNanos(String phase, long nanos)
+    {
+        if (enabled) {
+            synchronized (PHASES) {
+                PHASES.computeIfAbsent(phase, ignored -> new Phase()).add(nanos);
+            }
+        }
+    }
+
+    /**
+     * Records the time from JVM start until {@code mainStartMillis} (from {@link System#currentTimeMillis()}).
+     */
+    public static void recordJvmStartup(long mainStartMillis)
+    {
+        if (enabled) {
+            long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+            recordNanos("jvm start to main", MILLISECONDS.toNanos(mainStartMillis - jvmStartMillis));
+        }
+    }
+
+    public static void print(PrintStream out)
+    {
+        if (!enabled) {
+            return;
+        }
+        synchronized (PHASES) {
+            out.println("Timings:");
+            PHASES.forEach((name, phase) -> {
+                if (phase.count == 1) {
+                    out.printf("  %-28s %10.3f ms%n", name, phase.totalNanos / 1e6);
+                }
+                else {
+                    out.printf("  %-28s %10.3f ms total, %s times, %.3f ms avg%n", name, phase.totalNanos / 1e6, phase.count, phase.totalNanos / 1e6 / phase.count);
+                }
+            });
+        }
+    }
+
+    private static final class Phase
+    {
+        private long count;
+        private long totalNanos;
+
+        private void add(long nanos)
+        {
+            count++;
+            totalNanos += nanos;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import com.google.common.base.Suppliers;
+import okhttp3.OkHttpClient;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static java.lang.Math.toIntExact;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Process wide TLS contexts. Clients share a context, and with it the client session cache, so that new connections to
+ * a host already seen resume the TLS session instead of doing a full handshake. Contexts for a truststore or CA bundle
+ * are loaded once per {@link TrustMaterial}.
+ */
+public final class TlsContexts
+{
+    private static final Map<TrustMaterial, TrustedSsl> TRUSTED = new ConcurrentHashMap<>();
+    private static final X509TrustManager TRUST_ALL_CERTS = new X509TrustManager()
+    {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType)
+        {
+            throw new UnsupportedOperationException("checkClientTrusted should not be called");
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType)
+        {
+            // skip validation of server certificate
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers()
+        {
+            return new X509Certificate[0];
+        }
+    };
+
+    private TlsContexts() {}
+
+    public static void setupInsecureSsl(OkHttpClient.Builder clientBuilder)
+    {
+        clientBuilder.sslSocketFactory(InsecureSsl.SSL_CONTEXT.getSocketFactory(), TRUST_ALL_CERTS);
+        clientBuilder.hostnameVerifier((hostname, session) -> true);
+    }
+
+    /**
+     * Sets up TLS validating against {@code trustMaterial}, or trusting all servers if it has none. The session cache
+     * settings are applied to the shared context, and every completed handshake, with whether it resumed a cached
+     * session, is reported to {@code handshakeListener}.
+     */
+    public static void setupSsl(OkHttpClient.Builder clientBuilder, TrustMaterial trustMaterial, int sessionCacheSize, Duration sessionTimeout, Consumer<Boolean> handshakeListener)
+    {
+        if (trustMaterial.isTrustAll()) {
+            // the context is only created once the first TLS connection is made, plain HTTP runs never pay for it
+            Supplier<SSLSocketFactory> socketFactory = () -> {
+                configureSessionCache(InsecureSsl.SSL_CONTEXT, sessionCacheSize, sessionTimeout);
+                return InsecureSsl.SSL_CONTEXT.getSocketFactory();
+            };
+            clientBuilder.sslSocketFactory(new HandshakeTrackingSocketFactory(socketFactory, handshakeListener), TRUST_ALL_CERTS);
+            clientBuilder.hostnameVerifier((hostname, session) -> true);
+            return;
+        }
+        TrustedSsl trustedSsl = TRUSTED.computeIfAbsent(trustMaterial, TlsContexts::createTrustedSsl);
+        configureSessionCache(trustedSsl.sslContext, sessionCacheSize, sessionTimeout);
+        clientBuilder.sslSocketFactory(new HandshakeTrackingSocketFactory(trustedSsl.sslContext::getSocketFactory, handshakeListener), trustedSsl.trustManager);
+    }
+
+    // the session cache belongs to the context, so these settings apply to every client using it
+    private static void configureSessionCache(SSLContext sslContext, int sessionCacheSize, Duration sessionTimeout)
+    {
+        SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        sessionContext.setSessionCacheSize(sessionCacheSize);
+        sessionContext.setSessionTimeout(toIntExact(sessionTimeout.toSeconds()));
+    }
+
+    private static TrustedSsl createTrustedSsl(TrustMaterial trustMaterial)
+    {
+        long start = System.nanoTime();
+        try {
+            X509TrustManager trustManager = trustMaterial.loadTrustManager();
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, new TrustManager[] {trustManager}, null);
+            Timings.record("tls trust material load", start);
+            return new TrustedSsl(sslContext, trustManager);
+        }
+        catch (IOException | GeneralSecurityException e) {
+            throw new RuntimeException("Error loading " + trustMaterial + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static class TrustedSsl
+    {
+        private final SSLContext sslContext;
+        private final X509TrustManager trustManager;
+
+        public TrustedSsl(SSLContext sslContext, X509TrustManager trustManager)
+        {
+            this.sslContext = requireNonNull(sslContext, "sslContext is null");
+            this.trustManager = requireNonNull(trustManager, "trustManager is null");
+        }
+    }
+
+    // initialized on first use, which setupSsl defers to the first TLS connection
+    private static final class InsecureSsl
+    {
+        private static final SSLContext SSL_CONTEXT = createSslContext();
+
+        private static SSLContext createSslContext()
+        {
+            long start = System.nanoTime();
+            try {
+                SSLContext sslContext = SSLContext.getInstance("SSL");
+                sslContext.init(null, new TrustManager[] {TRUST_ALL_CERTS}, new SecureRandom());
+                Timings.record("tls context init", start);
+                return sslContext;
+            }
+            catch (GeneralSecurityException e) {
+                throw new RuntimeException("Error setting up SSL: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Reports whether handshakes resumed a session. A resumed session was created before the socket it is used on.
+     * The delegate is obtained when the first socket is created.
+     */
+    private static class HandshakeTrackingSocketFactory
+            extends SSLSocketFactory
+    {
+        private final Supplier<SSLSocketFactory> delegate;
+        private final Consumer<Boolean> handshakeListener;
+
+        public HandshakeTrackingSocketFactory(Supplier<SSLSocketFactory> delegate, Consumer<Boolean> handshakeListener)
+        {
+            this.delegate = Suppliers.memoize(requireNonNull(delegate, "delegate is null")::get);
+            this.handshakeListener = requireNonNull(handshakeListener, "handshakeListener is null");
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites()
+        {
+            return delegate.get().getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites()
+        {
+            return delegate.get().getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket()
+                throws IOException
+        {
+            return track(delegate.get().createSocket());
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose)
+                throws IOException
+        {
+            return track(delegate.get().createSocket(socket, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port)
+                throws IOException
+        {
+            return track(delegate.get().createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+                throws IOException
+        {
+            return track(delegate.get().createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port)
+                throws IOException
+        {
+            return track(delegate.get().createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+                throws IOException
+        {
+            return track(delegate.get().createSocket(address, port, localAddress, localPort));
+        }
+
+        private Socket track(Socket socket)
+        {
+            long createdMillis = System.currentTimeMillis();
+            if (socket instanceof SSLSocket) {
+                ((SSLSocket) socket).addHandshakeCompletedListener((HandshakeCompletedEvent event) ->
+                        handshakeListener.accept(event.getSession().getCreationTime() < createdMillis));
+            }
+            return socket;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reuses signed tokens per (principal, signing key) until they get within the refresh margin of their expiration.
+ */
+public class TokenCache
+{
+    public static final Duration DEFAULT_REFRESH_MARGIN = Duration.ofSeconds(30);
+    private static final int MIN_SWEEP_SIZE = 1024;
+
+    private final Duration tokenExpiration;
+    private final Duration refreshMargin;
+    private final Map<CacheKey, CachedToken> tokens = new ConcurrentHashMap<>();
+    // stale tokens are dropped once the map grows past this, which then doubles, so sweeps stay amortized O(1) per insert
+    private volatile int sweepSize = MIN_SWEEP_SIZE;
+
+    /**
+     * @param tokenExpiration validity of the tokens this cache signs
+     */
+    public TokenCache(Duration tokenExpiration, Duration refreshMargin)
+    {
+        this.tokenExpiration = requireNonNull(tokenExpiration, "tokenExpiration is null");
+        this.refreshMargin = requireNonNull(refreshMargin, "refreshMargin is null");
+        checkArgument(!refreshMargin.isNegative(), "refreshMargin is negative: %s", refreshMargin);
+        checkArgument(refreshMargin.compareTo(tokenExpiration) < 0, "token refresh margin %s must be shorter than token expiration %s", refreshMargin, tokenExpiration);
+    }
+
+    public String getToken(JwtSigner jwtSigner, String principal)
+    {
+        CacheKey key = new CacheKey(principal, jwtSigner.getSigningKey().getFingerprint());
+        Instant now = Instant.now();
+        CachedToken cached = tokens.get(key);
+        if (cached != null && cached.isFresh(now)) {
+            return cached.token;
+        }
+        String token = tokens.compute(key, (ignored, current) -> {
+            if (current != null && current.isFresh(now)) {
+                return current;
+            }
+            Instant expiresAt = now.plus(tokenExpiration);
+            return new CachedToken(jwtSigner.sign(principal, expiresAt), expiresAt.minus(refreshMargin));
+        }).token;
+        if (tokens.size() > sweepSize) {
+            tokens.values().removeIf(cachedToken -> !cachedToken.isFresh(now));
+            sweepSize = Math.max(MIN_SWEEP_SIZE, tokens.size() * 2);
+        }
+        return token;
+    }
+
+    int size()
+    {
+        return tokens.size();
+    }
+
+    private static final class CachedToken
+    {
+        private final String token;
+        private final Instant refreshAt;
+
+        private CachedToken(String token, Instant refreshAt)
+        {
+            this.token = token;
+            this.refreshAt = refreshAt;
+        }
+
+        private boolean isFresh(Instant now)
+        {
+            return now.isBefore(refreshAt);
+        }
+    }
+
+    private static final class CacheKey
+    {
+        private final String principal;
+        private final String keyFingerprint;
+
+        private CacheKey(String principal, String keyFingerprint)
+        {
+            this.principal = requireNonNull(principal, "principal is null");
+            this.keyFingerprint = requireNonNull(keyFingerprint, "keyFingerprint is null");
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CacheKey that = (CacheKey) o;
+            return principal.equals(that.principal) && keyFingerprint.equals(that.keyFingerprint);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(principal, keyFingerprint);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.CertificateFactory;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Where to load trusted certificates from: a truststore, a PEM CA bundle, or both. Without either, all server
+ * certificates are trusted.
+ */
+public final class TrustMaterial
+{
+    private static final Pattern PEM_CERTIFICATE = Pattern.compile("-----BEGIN CERTIFICATE-----([^-]+)-----END CERTIFICATE-----");
+
+    private final Path truststore;
+    private final String truststorePassword;
+    private final Path caBundle;
+
+    public TrustMaterial(Path truststore, String truststorePassword, Path caBundle)
+    {
+        this.truststore = truststore;
+        this.truststorePassword = truststorePassword;
+        this.caBundle = caBundle;
+    }
+
+    public boolean isTrustAll()
+    {
+        return truststore == null && caBundle == null;
+    }
+
+    public X509TrustManager loadTrustManager()
+            throws IOException, GeneralSecurityException
+    {
+        KeyStore keyStore;
+        if (truststore != null) {
+            keyStore = KeyStore.getInstance(truststore.toFile(), truststorePassword == null ? null : truststorePassword.toCharArray());
+        }
+        else {
+            keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            keyStore.load(null, null);
+        }
+        if (caBundle != null) {
+            // only look at the certificate blocks, bundles may also contain comments or keys
+            CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+            Matcher matcher = PEM_CERTIFICATE.matcher(Files.readString(caBundle, US_ASCII));
+            int index = 0;
+            while (matcher.find()) {
+                byte[] der = Base64.getMimeDecoder().decode(matcher.group(1));
+                keyStore.setCertificateEntry("ca-bundle-" + index++, certificateFactory.generateCertificate(new ByteArrayInputStream(der)));
+            }
+            if (index == 0) {
+                throw new GeneralSecurityException("No certificates found in " + caBundle);
+            }
+        }
+
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(keyStore);
+        for (TrustManager trustManager : trustManagerFactory.getTrustManagers()) {
+            if (trustManager instanceof X509TrustManager) {
+                return (X509TrustManager) trustManager;
+            }
+        }
+        throw new GeneralSecurityException("No X509TrustManager available");
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TrustMaterial that = (TrustMaterial) o;
+        return Objects.equals(truststore, that.truststore) &&
+                Objects.equals(truststorePassword, that.truststorePassword) &&
+                Objects.equals(caBundle, that.caBundle);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(truststore, truststorePassword, caBundle);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TrustMaterial{truststore=" + truststore + ", caBundle=" + caBundle + "}";
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.ClassloaderProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Cold start cost of building the command line and parsing the arguments of generate_jwt_token. Every fork is a
+ * fresh JVM measured once, so the numbers include class loading; run with {@code -prof cl} for class counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(MILLISECONDS)
+@Fork(10)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class BenchmarkCliStartup
+{
+    private static final String[] ARGS = {"generate_jwt_token", "--secret", "benchmark"};
+
+    @Param({"eager", "lazy"})
+    public String subcommands = "lazy";
+
+    @Benchmark
+    public Object createAndParse()
+    {
+        if (subcommands.equals("eager")) {
+            return Cli.create().parseArgs(ARGS);
+        }
+        return Cli.create(ARGS).parseArgs(ARGS);
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+                .include(".*" + BenchmarkCliStartup.class.getSimpleName() + ".*")
+                .addProfiler(ClassloaderProfiler.class)
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okio.BufferedSink;
+import okio.Okio;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Time to complete a batch of concurrent internal calls against an in-process server, with the calls enqueued on
+ * the OkHttp dispatcher or executed blocking on platform or virtual threads. virtual_threads needs a Java 21 JVM, e.g.
+ * {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark=BenchmarkConcurrentRequests -Dbenchmark.java=<jdk21>/bin/java}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BenchmarkConcurrentRequests
+{
+    private static final byte[] RESPONSE = "{\"nodeVersion\":{\"version\":\"benchmark\"},\"coordinator\":false,\"starting\":false}".getBytes(UTF_8);
+
+    @Param({"dispatcher", "platform_threads", "virtual_threads"})
+    public String execution = "dispatcher";
+
+    @Param({"100", "1000"})
+    public int calls = 100;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private OkHttpClient httpClient;
+    private ExecutorService executor;
+    private List<String> urls;
+    private String jwt;
+    private BufferedSink output;
+
+    @Setup(Level.Trial)
+    public void setup()
+            throws IOException
+    {
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), calls);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.createContext("/v1/info", exchange -> {
+            try (OutputStream body = exchange.getResponseBody()) {
+                exchange.sendResponseHeaders(200, RESPONSE.length);
+                body.write(RESPONSE);
+            }
+            finally {
+                exchange.close();
+            }
+        });
+        server.start();
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(calls);
+        dispatcher.setMaxRequestsPerHost(calls);
+        httpClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(calls, 5, MINUTES))
+                .build();
+
+        switch (execution) {
+            case "dispatcher":
+                break;
+            case "platform_threads":
+                executor = Executors.newCachedThreadPool();
+                break;
+            case "virtual_threads":
+                executor = ConcurrentRequests.newVirtualThreadPerTaskExecutor();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown execution: " + execution);
+        }
+
+        urls = new ArrayList<>(Collections.nCopies(calls, "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/info"));
+        jwt = JwtSigner.forSecret("benchmark-shared-secret").sign("nodeId");
+        output = Okio.buffer(Okio.blackhole());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        httpClient.dispatcher().executorService().shutdownNow();
+        httpClient.connectionPool().evictAll();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public Object executeAll()
+            throws InterruptedException
+    {
+        if (executor == null) {
+            return ConcurrentRequests.executeAll(httpClient, urls, jwt, output);
+        }
+        return ConcurrentRequests.executeAllBlocking(httpClient, urls, jwt, output, executor);
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+                .include(".*" + BenchmarkConcurrentRequests.class.getSimpleName() + ".*")
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
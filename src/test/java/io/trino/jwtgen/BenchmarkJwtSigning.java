@@ -0,0 +1,163 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.impl.DefaultJwtBuilder;
+import io.jsonwebtoken.io.Serializer;
+import io.jsonwebtoken.jackson.io.JacksonSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.Key;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.Map;
+
+import static io.jsonwebtoken.security.Keys.hmacShaKeyFor;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BenchmarkJwtSigning
+{
+    private static final Serializer<Map<String, ?>> JWT_SERIALIZER = new JacksonSerializer<>();
+    private static final String SECRET = "benchmark-shared-secret";
+    private static final String PRINCIPAL = "nodeId";
+
+    private JwtSigner jwtSigner;
+    private JwtSigner fastJwtSigner;
+
+    @Setup
+    public void setup()
+    {
+        jwtSigner = JwtSigner.forSecret(SECRET);
+        fastJwtSigner = JwtSigner.forSecret(SECRET, JwtSigner.Implementation.FAST);
+    }
+
+    @State(Scope.Thread)
+    public static class AlgorithmState
+    {
+        @Param({"HS256", "HS384", "HS512"})
+        public String algorithm = "HS256";
+
+        private HashFunction keyHash;
+        private Key cachedKey;
+
+        @Setup
+        public void setup()
+        {
+            // Trino derives HS256 keys with SHA-256; wider hashes give keys long enough for HS384 and HS512
+            switch (SignatureAlgorithm.forName(algorithm)) {
+                case HS256:
+                    keyHash = Hashing.sha256();
+                    break;
+                case HS384:
+                    keyHash = Hashing.sha384();
+                    break;
+                case HS512:
+                    keyHash = Hashing.sha512();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported algorithm: " + algorithm);
+            }
+            cachedKey = deriveKey(this);
+        }
+    }
+
+    @Benchmark
+    public static Key deriveKey(AlgorithmState state)
+    {
+        return hmacShaKeyFor(state.keyHash.hashString(SECRET, UTF_8).asBytes());
+    }
+
+    @Benchmark
+    public SigningKey cachedSigningKey()
+    {
+        return SigningKey.forSecret(SECRET);
+    }
+
+    /**
+     * What every command did per token originally: derive the key, create a builder, sign.
+     */
+    @Benchmark
+    public String signWithUncachedKey(AlgorithmState state)
+    {
+        return sign(deriveKey(state));
+    }
+
+    @Benchmark
+    public String signWithCachedKey(AlgorithmState state)
+    {
+        return sign(state.cachedKey);
+    }
+
+    /**
+     * The path used by the commands: cached HS256 key and a reused per-thread builder.
+     */
+    @Benchmark
+    public String jwtSigner()
+    {
+        return jwtSigner.sign(PRINCIPAL);
+    }
+
+    /**
+     * Same tokens as {@link #jwtSigner()}, encoded by {@link Hs256JwtEncoder}.
+     */
+    @Benchmark
+    public String fastJwtSigner()
+    {
+        return fastJwtSigner.sign(PRINCIPAL);
+    }
+
+    private static String sign(Key key)
+    {
+        return new DefaultJwtBuilder()
+                .serializeToJsonWith(JWT_SERIALIZER)
+                .signWith(key)
+                .setSubject(PRINCIPAL)
+                .setExpiration(Date.from(ZonedDateTime.now().plusMinutes(5).toInstant()))
+                .compact();
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+                .include(".*" + BenchmarkJwtSigning.class.getSimpleName() + ".*")
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
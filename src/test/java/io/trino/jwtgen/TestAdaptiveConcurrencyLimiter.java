@@ -0,0 +1,171 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TestAdaptiveConcurrencyLimiter
+{
+    private static final String HOST = "worker-1";
+    private static final long FAST = MILLISECONDS.toNanos(10);
+    private static final long SLOW = MILLISECONDS.toNanos(30);
+
+    @Test
+    public void testSlowStart()
+            throws InterruptedException
+    {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 256, 2.0);
+        succeed(limiter, 4);
+        assertEquals(8, limiter.getLimit());
+        succeed(limiter, 8);
+        assertEquals(16, limiter.getLimit());
+    }
+
+    @Test
+    public void testAdditiveIncreaseAfterBackoff()
+            throws InterruptedException
+    {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 256, 2.0);
+        respond(limiter, 503, null);
+        assertEquals(4, limiter.getLimit());
+        // one per limit's worth of responses: 4 + 1/4 + 1/4.25 + 1/4.49 + 1/4.71 = 5.0
+        succeed(limiter, 4);
+        assertEquals(4, limiter.getLimit());
+        succeed(limiter, 1);
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    public void testOverloadHalvesLimit()
+            throws InterruptedException
+    {
+        assertHalved(503, null);
+        assertHalved(429, null);
+        assertHalved(0, new SocketTimeoutException("timeout"));
+    }
+
+    @Test
+    public void testOtherFailuresKeepLimit()
+            throws InterruptedException
+    {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 256, 2.0);
+        respond(limiter, 0, new IOException("connection reset"));
+        respond(limiter, 500, null);
+        // a 500 is a response, fast enough to count as success
+        assertEquals(9, limiter.getLimit());
+    }
+
+    @Test
+    public void testLatencyBackoff()
+            throws InterruptedException
+    {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 256, 2.0);
+        succeed(limiter, 1);
+        assertEquals(21, limiter.getLimit());
+        release(limiter, limiter.acquire(), SLOW, 200);
+        // 21 * 0.9 = 18.9
+        assertEquals(18, limiter.getLimit());
+    }
+
+    @Test
+    public void testLatencyComparedPerHost()
+            throws InterruptedException
+    {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 256, 2.0);
+        succeed(limiter, 1);
+        limiter.release("worker-2", limiter.acquire(), SLOW, 200, null);
+        assertEquals(22, limiter.getLimit());
+    }
+
+    @Test
+    public void testSmallLatencyIncreaseIgnored()
+            throws InterruptedException
+    {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 256, 2.0);
+        release(limiter, limiter.acquire(), MILLISECONDS.toNanos(1), 200);
+        // three times slower, but only 2ms more
+        release(limiter, limiter.acquire(), MILLISECONDS.toNanos(3), 200);
+        assertEquals(22, limiter.getLimit());
+    }
+
+    @Test
+    public void testDecreaseOncePerRoundTrip()
+            throws InterruptedException
+    {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(16, 256, 2.0);
+        long first = limiter.acquire();
+        long second = limiter.acquire();
+        release(limiter, first, FAST, 503);
+        assertEquals(8, limiter.getLimit());
+        // sent before the back off, so it reports the same overload
+        release(limiter, second, SLOW, 503);
+        assertEquals(8, limiter.getLimit());
+        // sent after the back off
+        release(limiter, limiter.acquire(), FAST, 503);
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void testBounds()
+            throws InterruptedException
+    {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 10, 2.0);
+        respond(limiter, 503, null);
+        assertEquals(1, limiter.getLimit());
+        succeed(limiter, 100);
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void testInvalidArguments()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(0, 10, 2.0));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(10, 5, 2.0));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(1, 10, 1.0));
+    }
+
+    private static void assertHalved(int statusCode, IOException failure)
+            throws InterruptedException
+    {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 256, 2.0);
+        respond(limiter, statusCode, failure);
+        assertEquals(5, limiter.getLimit());
+    }
+
+    private static void succeed(AdaptiveConcurrencyLimiter limiter, int count)
+            throws InterruptedException
+    {
+        for (int i = 0; i < count; i++) {
+            release(limiter, limiter.acquire(), FAST, 200);
+        }
+    }
+
+    private static void respond(AdaptiveConcurrencyLimiter limiter, int statusCode, IOException failure)
+            throws InterruptedException
+    {
+        limiter.release(HOST, limiter.acquire(), FAST, statusCode, failure);
+    }
+
+    private static void release(AdaptiveConcurrencyLimiter limiter, long startNanos, long latencyNanos, int statusCode)
+    {
+        limiter.release(HOST, startNanos, latencyNanos, statusCode, null);
+    }
+}
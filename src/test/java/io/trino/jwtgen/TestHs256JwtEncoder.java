@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestHs256JwtEncoder
+{
+    private static final String SECRET = "a secret of at least 256 bits for HS256 signing";
+
+    private static final List<String> SUBJECTS = List.of(
+            "nodeId",
+            "",
+            "with \"quotes\"",
+            "back\\slash\\",
+            "slash/and<html>&'",
+            "tab\tnewline\nreturn\rbackspace\bformfeed\f",
+            "control \u0000\u0001\u001f and delete \u007f",
+            "line separators \u2028\u2029",
+            "non-ASCII: za\u017c\u00f3\u0142\u0107 g\u0119\u015bl\u0105 ja\u017a\u0144, \u65e5\u672c\u8a9e",
+            "non-BMP: \ud83d\ude00 \ud834\udd1e",
+            "x".repeat(1000));
+
+    private static final List<Instant> EXPIRATIONS = List.of(
+            Instant.EPOCH,
+            Instant.ofEpochSecond(1),
+            Instant.ofEpochSecond(1_700_000_000),
+            Instant.ofEpochSecond(1_700_000_000, 999_999_999),
+            Instant.parse("9999-12-31T23:59:59Z"));
+
+    @Test
+    public void testMatchesJjwt()
+    {
+        JwtSigner jjwt = JwtSigner.forSecret(SECRET, JwtSigner.Implementation.JJWT);
+        JwtSigner fast = JwtSigner.forSecret(SECRET, JwtSigner.Implementation.FAST);
+        for (String subject : SUBJECTS) {
+            for (Instant expiration : EXPIRATIONS) {
+                assertEquals(jjwt.sign(subject, expiration), fast.sign(subject, expiration), () -> "subject " + subject + ", expiration " + expiration);
+            }
+        }
+    }
+
+    @Test
+    public void testReusedBuffers()
+    {
+        // a long subject grows the per-thread buffers, the following short ones must not see its leftovers
+        JwtSigner jjwt = JwtSigner.forSecret(SECRET, JwtSigner.Implementation.JJWT);
+        JwtSigner fast = JwtSigner.forSecret(SECRET, JwtSigner.Implementation.FAST);
+        Instant expiration = Instant.ofEpochSecond(1_700_000_000);
+        for (String subject : List.of("\ud83d\ude00".repeat(500), "a", "\"", "")) {
+            assertEquals(jjwt.sign(subject, expiration), fast.sign(subject, expiration), subject);
+        }
+    }
+}
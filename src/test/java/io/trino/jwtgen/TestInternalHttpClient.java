@@ -0,0 +1,58 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestInternalHttpClient
+{
+    @Test
+    public void testAllOf()
+    {
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        CompletableFuture<List<String>> all = InternalHttpClient.allOf(List.of(first, second));
+        second.complete("b");
+        assertFalse(all.isDone());
+        first.complete("a");
+        assertEquals(List.of("a", "b"), all.join());
+    }
+
+    @Test
+    public void testAllOfFailsFast()
+    {
+        CompletableFuture<String> failing = new CompletableFuture<>();
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        CompletableFuture<List<String>> all = InternalHttpClient.allOf(List.of(pending, failing));
+        IOException failure = new IOException("connection refused");
+        failing.completeExceptionally(failure);
+
+        assertTrue(all.isCompletedExceptionally());
+        CompletionException e = assertThrows(CompletionException.class, all::join);
+        assertSame(failure, e.getCause());
+        // the other futures are left alone
+        assertFalse(pending.isDone());
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestLineDiff
+{
+    @Test
+    public void testEqual()
+    {
+        assertEquals(List.of(), LineDiff.diff(List.of(), List.of()));
+        assertEquals(List.of(), LineDiff.diff(List.of("a", "b", "c"), List.of("a", "b", "c")));
+    }
+
+    @Test
+    public void testInsertion()
+    {
+        assertEquals(List.of("+ x"), LineDiff.diff(List.of("a", "b"), List.of("a", "x", "b")));
+        assertEquals(List.of("+ x", "+ y"), LineDiff.diff(List.of("a"), List.of("x", "y", "a")));
+        assertEquals(List.of("+ a", "+ b"), LineDiff.diff(List.of(), List.of("a", "b")));
+    }
+
+    @Test
+    public void testDeletion()
+    {
+        assertEquals(List.of("- b"), LineDiff.diff(List.of("a", "b", "c"), List.of("a", "c")));
+        assertEquals(List.of("- c"), LineDiff.diff(List.of("a", "b", "c"), List.of("a", "b")));
+        assertEquals(List.of("- a", "- b"), LineDiff.diff(List.of("a", "b"), List.of()));
+    }
+
+    @Test
+    public void testReplacement()
+    {
+        assertEquals(List.of("- b", "+ x"), LineDiff.diff(List.of("a", "b", "c"), List.of("a", "x", "c")));
+        // the common lines in the middle of the change are kept
+        assertEquals(
+                List.of("- b", "+ x", "- d", "+ y"),
+                LineDiff.diff(List.of("a", "b", "c", "d", "e"), List.of("a", "x", "c", "y", "e")));
+    }
+
+    @Test
+    public void testRepeatedLines()
+    {
+        assertEquals(List.of("+ }"), LineDiff.diff(List.of("{", "}"), List.of("{", "}", "}")));
+        assertEquals(List.of("- x", "- x"), LineDiff.diff(List.of("x", "x", "x"), List.of("x")));
+    }
+
+    @Test
+    public void testLargeChangeListedAsWhole()
+    {
+        // 4001 x 4001 lines is over the table limit, so even the common line in the middle is listed as changed
+        List<String> before = new ArrayList<>();
+        List<String> after = new ArrayList<>();
+        for (int i = 0; i < 4001; i++) {
+            before.add(i == 2000 ? "common" : "before " + i);
+            after.add(i == 2000 ? "common" : "after " + i);
+        }
+        List<String> changes = LineDiff.diff(before, after);
+        assertEquals(8002, changes.size());
+        assertEquals("- before 0", changes.get(0));
+        assertEquals("- common", changes.get(2000));
+        assertEquals("+ after 0", changes.get(4001));
+        assertEquals("+ common", changes.get(6001));
+    }
+
+    @Test
+    public void testSmallChangeInLargeInput()
+    {
+        // equal prefix and suffix are trimmed before the limit applies
+        List<String> before = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            before.add("line " + i);
+        }
+        List<String> after = new ArrayList<>(before);
+        after.set(5000, "changed");
+        assertEquals(List.of("- line 5000", "+ changed"), LineDiff.diff(before, after));
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.jwtgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestTokenCache
+{
+    private static final String SECRET = "a secret of at least 256 bits for HS256 signing";
+
+    @Test
+    public void testReusesFreshToken()
+    {
+        TokenCache cache = new TokenCache(JwtSigner.DEFAULT_EXPIRATION, TokenCache.DEFAULT_REFRESH_MARGIN);
+        JwtSigner signer = new JwtSigner(SigningKey.forSecret(SECRET), JwtSigner.DEFAULT_EXPIRATION, JwtSigner.Implementation.FAST);
+        String token = cache.getToken(signer, "alice");
+        assertEquals(token, cache.getToken(signer, "alice"));
+        assertNotEquals(token, cache.getToken(signer, "bob"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testInvalidRefreshMargin()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new TokenCache(Duration.ofSeconds(10), Duration.ofSeconds(30)));
+        assertThrows(IllegalArgumentException.class, () -> new TokenCache(Duration.ofSeconds(30), Duration.ofSeconds(30)));
+        assertThrows(IllegalArgumentException.class, () -> new TokenCache(Duration.ofSeconds(30), Duration.ofSeconds(-1)));
+    }
+
+    @Test
+    public void testEvictsStaleTokens()
+            throws InterruptedException
+    {
+        TokenCache cache = new TokenCache(Duration.ofMillis(1), Duration.ZERO);
+        JwtSigner signer = new JwtSigner(SigningKey.forSecret(SECRET), Duration.ofMillis(1), JwtSigner.Implementation.FAST);
+        for (int i = 0; i < 5000; i++) {
+            cache.getToken(signer, "stale-" + i);
+        }
+        Thread.sleep(10);
+        // the map grows at most to twice its size after the last sweep before it is swept again
+        for (int i = 0; i < 20000; i++) {
+            cache.getToken(signer, "principal-" + i);
+        }
+        assertTrue(cache.size() <= 20000, "stale tokens were not evicted: " + cache.size());
+    }
+}